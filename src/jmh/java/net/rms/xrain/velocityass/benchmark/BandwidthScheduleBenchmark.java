@@ -0,0 +1,57 @@
+package net.rms.xrain.velocityass.benchmark;
+
+import net.rms.xrain.velocityass.config.BandwidthTimeSlot;
+import net.rms.xrain.velocityass.config.TimeBasedBandwidthSchedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分时段带宽限制查询的开销，每次选路会对每条路由执行多次
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BandwidthScheduleBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int timeSlots;
+
+    private TimeBasedBandwidthSchedule schedule;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        schedule = new TimeBasedBandwidthSchedule(1048576);
+        int slotMinutes = 24 * 60 / timeSlots;
+        for (int i = 0; i < timeSlots; i++) {
+            int start = i * slotMinutes;
+            int end = start + slotMinutes / 2;
+            schedule.addTimeSlot(new BandwidthTimeSlot(formatTime(start), formatTime(end), 2097152L + i, i));
+        }
+        // 跨天时段
+        schedule.addTimeSlot(new BandwidthTimeSlot("23:30", "ND00:30", 512000, timeSlots));
+    }
+
+    private static String formatTime(int minuteOfDay) {
+        return String.format("%02d:%02d", minuteOfDay / 60 % 24, minuteOfDay % 60);
+    }
+
+    @Benchmark
+    public long getCurrentBandwidthLimit() {
+        return schedule.getCurrentBandwidthLimit();
+    }
+}
@@ -0,0 +1,178 @@
+package net.rms.xrain.velocityass.benchmark;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.player.BandwidthManager;
+import com.velocitypowered.api.proxy.player.BandwidthSnapshot;
+import com.velocitypowered.api.proxy.player.PlayerBandwidthStats;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerInfo;
+import net.rms.xrain.velocityass.config.ConfigManager;
+import net.rms.xrain.velocityass.service.RouteManager;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static net.rms.xrain.velocityass.testing.Stubs.stub;
+
+/**
+ * 基准测试用的桩环境：用动态代理模拟 ProxyServer、Player 和 BandwidthManager，
+ * 并生成包含指定路由数量的配置文件。
+ */
+final class BenchmarkFixtures {
+
+    static final String SERVER_NAME = "survival";
+    static final Logger LOGGER = NOPLogger.NOP_LOGGER;
+
+    private static final double PLAYER_BANDWIDTH = 24 * 1024;
+
+    private final Path dataDirectory;
+    private final UUID[] playerIds;
+    private final ProxyServer proxyServer;
+    private final ConfigManager configManager;
+
+    private BenchmarkFixtures(int playerCount, int routeCount, String routeStrategy) throws IOException {
+        this.dataDirectory = Files.createTempDirectory("velocityass-jmh");
+        this.playerIds = new UUID[playerCount];
+
+        Map<UUID, Player> players = new HashMap<>();
+        Map<UUID, PlayerBandwidthStats> stats = new HashMap<>();
+        for (int i = 0; i < playerCount; i++) {
+            UUID playerId = new UUID(0x5EED, i);
+            String username = "player" + i;
+            double download = PLAYER_BANDWIDTH * (0.5 + (i % 10) / 10.0);
+            playerIds[i] = playerId;
+            players.put(playerId, stub(Player.class, (method, args) -> switch (method.getName()) {
+                case "getUniqueId" -> playerId;
+                case "getUsername" -> username;
+                case "isActive" -> true;
+                default -> null;
+            }));
+            stats.put(playerId, stub(PlayerBandwidthStats.class, (method, args) -> switch (method.getName()) {
+                case "getPlayerUuid" -> playerId;
+                case "getPlayerUsername" -> username;
+                case "getDownloadSpeed" -> download;
+                case "getUploadSpeed" -> download / 8;
+                case "isActive" -> true;
+                case "getCurrentServerName" -> SERVER_NAME;
+                default -> null;
+            }));
+        }
+
+        List<Player> allPlayers = Collections.unmodifiableList(new ArrayList<>(players.values()));
+        Collection<PlayerBandwidthStats> allStats = Collections.unmodifiableList(new ArrayList<>(stats.values()));
+        BandwidthSnapshot snapshot = stub(BandwidthSnapshot.class, (method, args) -> null);
+        BandwidthManager bandwidthManager = stub(BandwidthManager.class, (method, args) -> switch (method.getName()) {
+            case "getAllPlayerBandwidthStats" -> allStats;
+            case "getTotalBandwidthSnapshot" -> snapshot;
+            case "isBandwidthTrackingEnabled" -> true;
+            case "getPlayerBandwidthStats" -> Optional.ofNullable(stats.get(args[0] instanceof Player player
+                    ? player.getUniqueId() : args[0]));
+            default -> null;
+        });
+
+        this.proxyServer = stub(ProxyServer.class, (method, args) -> switch (method.getName()) {
+            case "getBandwidthManager" -> bandwidthManager;
+            case "getAllPlayers" -> allPlayers;
+            case "getPlayerCount" -> allPlayers.size();
+            case "getPlayer" -> args[0] instanceof UUID ? Optional.ofNullable(players.get(args[0])) : Optional.empty();
+            case "createRawRegisteredServer" -> registeredServer((ServerInfo) args[0]);
+            default -> null;
+        });
+
+        Files.write(dataDirectory.resolve("config.yml"), buildConfig(routeCount, playerCount, routeStrategy).getBytes(StandardCharsets.UTF_8));
+        this.configManager = new ConfigManager(dataDirectory, LOGGER, proxyServer);
+        configManager.loadConfig();
+    }
+
+    static BenchmarkFixtures create(int playerCount, int routeCount) throws IOException {
+        return create(playerCount, routeCount, "priority");
+    }
+
+    static BenchmarkFixtures create(int playerCount, int routeCount, String routeStrategy) throws IOException {
+        return new BenchmarkFixtures(playerCount, routeCount, routeStrategy);
+    }
+
+    RouteManager newRouteManager() {
+        return new RouteManager(configManager, proxyServer, LOGGER);
+    }
+
+    /**
+     * 让所有玩家通过正常的选路流程加入，使路由上的玩家分布和带宽累计处于稳定状态
+     */
+    void joinAll(RouteManager routeManager) {
+        for (UUID playerId : playerIds) {
+            routeManager.selectBestRoute(SERVER_NAME, playerId);
+        }
+        routeManager.updateAllRoutesBandwidth();
+    }
+
+    UUID[] getPlayerIds() {
+        return playerIds;
+    }
+
+    ProxyServer getProxyServer() {
+        return proxyServer;
+    }
+
+    ConfigManager getConfigManager() {
+        return configManager;
+    }
+
+    void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(dataDirectory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static String buildConfig(int routeCount, int playerCount, String routeStrategy) {
+        // 每条路由的带宽上限约为平均负载的 1.2 倍，使部分路由越过 85% 阈值
+        long perRouteLimit = (long) (PLAYER_BANDWIDTH * 1.2 * playerCount / routeCount);
+        StringBuilder config = new StringBuilder("servers:\n");
+        config.append("  ").append(SERVER_NAME).append(":\n");
+        config.append("    routes:\n");
+        for (int i = 0; i < routeCount; i++) {
+            config.append("      - address: \"10.0.").append(i / 250).append('.').append(i % 250 + 1).append(":25565\"\n");
+            config.append("        priority: ").append(i + 1).append('\n');
+            config.append("        enabled: true\n");
+            config.append("        max-bandwidth: ").append(perRouteLimit).append('\n');
+            if (i % 2 == 1) {
+                config.append("        use-scheduled-bandwidth: true\n");
+                config.append("        bandwidth-schedule:\n");
+                config.append("          default: ").append(perRouteLimit).append('\n');
+                config.append("          time-slots:\n");
+                config.append("            - start: \"08:00\"\n");
+                config.append("              end: \"18:00\"\n");
+                config.append("              bandwidth: ").append(perRouteLimit * 2).append('\n');
+                config.append("            - start: \"22:00\"\n");
+                config.append("              end: \"ND06:00\"\n");
+                config.append("              bandwidth: ").append(perRouteLimit / 2).append('\n');
+            }
+        }
+        config.append("    auto-sort: false\n");
+        config.append("    route-strategy: ").append(routeStrategy).append('\n');
+        config.append("    ping-interval: 30\n");
+        config.append("    ping-timeout: 5000\n");
+        return config.toString();
+    }
+
+    private static RegisteredServer registeredServer(ServerInfo serverInfo) {
+        return stub(RegisteredServer.class, (method, args) -> "getServerInfo".equals(method.getName()) ? serverInfo : null);
+    }
+}
@@ -0,0 +1,84 @@
+package net.rms.xrain.velocityass.benchmark;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.RouteManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 玩家加入路径上 RouteManager 的开销：选路、全量带宽刷新以及断线清理
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteManagerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int players;
+
+    @Param({"1", "20", "200"})
+    public int routes;
+
+    private BenchmarkFixtures fixtures;
+    private RouteManager routeManager;
+    private UUID[] playerIds;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixtures = BenchmarkFixtures.create(players, routes);
+        routeManager = fixtures.newRouteManager();
+        fixtures.joinAll(routeManager);
+        playerIds = fixtures.getPlayerIds();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        routeManager.shutdown();
+        fixtures.close();
+    }
+
+    private UUID nextPlayer() {
+        int index = cursor;
+        cursor = index + 1 == playerIds.length ? 0 : index + 1;
+        return playerIds[index];
+    }
+
+    @Benchmark
+    public RouteInfo selectBestRoute() {
+        return routeManager.selectBestRoute(BenchmarkFixtures.SERVER_NAME, nextPlayer());
+    }
+
+    @Benchmark
+    public void updateAllRoutesBandwidth() {
+        routeManager.updateAllRoutesBandwidth();
+    }
+
+    /**
+     * 断线清理后立即重新加入，保持路由上的玩家数量稳定
+     */
+    @Benchmark
+    public RouteInfo removePlayerFromAllRoutes() {
+        UUID playerId = nextPlayer();
+        routeManager.removePlayerFromAllRoutes(playerId);
+        return routeManager.selectBestRoute(BenchmarkFixtures.SERVER_NAME, playerId);
+    }
+}
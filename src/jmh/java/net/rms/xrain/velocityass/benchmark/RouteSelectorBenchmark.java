@@ -0,0 +1,77 @@
+package net.rms.xrain.velocityass.benchmark;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.BandwidthAwareRouteSelector;
+import net.rms.xrain.velocityass.service.RouteManager;
+import net.rms.xrain.velocityass.service.RoutingTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带宽感知选路和原子预留的开销，不包含玩家分配。每次选中后立即释放预留，反复运行时路由负载保持不变
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteSelectorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int players;
+
+    @Param({"1", "20", "200"})
+    public int routes;
+
+    @Param({"priority", "least-utilization", "p2c"})
+    public String strategy;
+
+    private BenchmarkFixtures fixtures;
+    private RouteManager routeManager;
+    private BandwidthAwareRouteSelector selector;
+    private RoutingTable.ServerRoutes serverRoutes;
+    private UUID playerId;
+    private double estimatedBandwidth;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixtures = BenchmarkFixtures.create(players, routes, strategy);
+        routeManager = fixtures.newRouteManager();
+        fixtures.joinAll(routeManager);
+        selector = routeManager.getBandwidthSelector();
+        serverRoutes = routeManager.getRoutingTable().getServerRoutes(BenchmarkFixtures.SERVER_NAME);
+        playerId = fixtures.getPlayerIds()[0];
+        estimatedBandwidth = routeManager.getBandwidthAggregator().getEstimatedPlayerBandwidth();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        routeManager.shutdown();
+        fixtures.close();
+    }
+
+    @Benchmark
+    public RouteInfo admitPlayer() {
+        RouteInfo route = selector.admitPlayer(serverRoutes, playerId, estimatedBandwidth);
+        if (route != null) {
+            route.addReservedBandwidth(-estimatedBandwidth);
+        }
+        return route;
+    }
+}
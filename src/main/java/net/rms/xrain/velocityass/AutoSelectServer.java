@@ -7,14 +7,19 @@ import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
 import net.rms.xrain.velocityass.command.VelocityAssCommand;
 import net.rms.xrain.velocityass.config.ConfigManager;
+import net.rms.xrain.velocityass.config.ConfigWatcher;
 import net.rms.xrain.velocityass.listener.ServerConnectionListener;
+import net.rms.xrain.velocityass.service.MetricsServer;
 import net.rms.xrain.velocityass.service.PingService;
 import net.rms.xrain.velocityass.service.RouteManager;
+import net.rms.xrain.velocityass.service.RouteStateCache;
 import org.slf4j.Logger;
 
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 @Plugin(
     id = "velocityass",
@@ -32,6 +37,10 @@ public class AutoSelectServer {
     private ConfigManager configManager;
     private PingService pingService;
     private RouteManager routeManager;
+    private MetricsServer metricsServer;
+    private ConfigWatcher configWatcher;
+    private RouteStateCache routeStateCache;
+    private ScheduledTask routeStateSaveTask;
     
     @Inject
     public AutoSelectServer(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
@@ -49,14 +58,23 @@ public class AutoSelectServer {
             configManager.loadConfig();
             
             routeManager = new RouteManager(configManager, server, logger);
+            // 在探测和监听器开始之前恢复上次的路由状态，重启后的第一次选路就能使用
+            routeStateCache = new RouteStateCache(dataDirectory, routeManager, logger);
+            routeStateCache.load();
             pingService = new PingService(routeManager, logger);
             
             server.getEventManager().register(this, new ServerConnectionListener(routeManager, logger, server, this));
             
-            server.getCommandManager().register("vass", new VelocityAssCommand(routeManager, logger));
-            server.getCommandManager().register("velocityass", new VelocityAssCommand(routeManager, logger));
+            server.getCommandManager().register("vass", new VelocityAssCommand(routeManager, logger, this));
+            server.getCommandManager().register("velocityass", new VelocityAssCommand(routeManager, logger, this));
             
             pingService.startPingTask();
+            startMetricsServer();
+            startConfigWatcher();
+            routeStateSaveTask = server.getScheduler().buildTask(this, routeStateCache::save)
+                    .delay(1, TimeUnit.MINUTES)
+                    .repeat(1, TimeUnit.MINUTES)
+                    .schedule();
             
             logger.info("VelocityASS 插件初始化完成！");
         } catch (Exception e) {
@@ -64,14 +82,75 @@ public class AutoSelectServer {
         }
     }
     
+    private void startMetricsServer() {
+        if (!configManager.isMetricsEnabled()) {
+            return;
+        }
+        
+        metricsServer = new MetricsServer(routeManager, logger, configManager.getMetricsHost(), configManager.getMetricsPort());
+        try {
+            metricsServer.start();
+        } catch (Exception e) {
+            logger.error("Prometheus 指标接口启动失败 ({}:{})", configManager.getMetricsHost(), configManager.getMetricsPort(), e);
+            metricsServer = null;
+        }
+    }
+    
+    /**
+     * auto-reload 可以在运行时修改，所以总是监视配置文件，由 onConfigFileChanged 按当前设置决定是否重新加载
+     */
+    private void startConfigWatcher() {
+        configWatcher = new ConfigWatcher(configManager.getConfigFile(), logger, this::onConfigFileChanged);
+        try {
+            configWatcher.start();
+        } catch (Exception e) {
+            logger.warn("无法监视配置文件，自动重新加载已关闭，可以使用 /vass reload 手动重新加载", e);
+            configWatcher = null;
+        }
+    }
+    
+    /**
+     * 在监视线程上解析新配置，只有内容真正变化时才应用。auto-reload 已关闭时忽略，改回 true 需要执行 /vass reload
+     */
+    private void onConfigFileChanged() {
+        if (!configManager.isAutoReload()) {
+            logger.debug("配置文件已修改，auto-reload 已关闭，未自动重新加载");
+            return;
+        }
+        try {
+            if (routeManager.reloadConfigIfChanged() != null) {
+                logger.info("检测到配置文件变化，已自动重新加载");
+            }
+        } catch (Exception e) {
+            logger.error("自动重新加载配置失败，继续使用当前配置", e);
+        }
+    }
+    
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
         logger.info("VelocityASS 插件正在关闭...");
         
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
+        
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        
         if (pingService != null) {
             pingService.stopPingTask();
         }
         
+        if (routeStateSaveTask != null) {
+            routeStateSaveTask.cancel();
+        }
+        
+        if (routeStateCache != null) {
+            routeStateCache.save();
+            routeStateCache.close();
+        }
+        
         if (routeManager != null) {
             routeManager.shutdown();
         }
@@ -0,0 +1,145 @@
+package net.rms.xrain.velocityass.command;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 子命令参数：[服务器过滤] [路由过滤] [页码]。
+ * 服务器过滤为完整名称，或以 * 结尾表示前缀匹配；路由过滤为序号或地址片段；单独的 * 表示不过滤。
+ * 最后一个纯数字参数视为页码，但前 requiredFilters 个参数总是作为过滤条件（例如 history 的路由序号）。
+ */
+final class CommandQuery {
+    private final String label;
+    private final String serverFilter;
+    private final String routeFilter;
+    private final int page;
+    private final int requiredFilters;
+
+    private CommandQuery(String label, String serverFilter, String routeFilter, int page, int requiredFilters) {
+        this.label = label;
+        this.serverFilter = serverFilter;
+        this.routeFilter = routeFilter;
+        this.page = page;
+        this.requiredFilters = requiredFilters;
+    }
+
+    /**
+     * @param label 用于提示下一页的命令前缀，例如 "/vass routes"
+     * @param args 命令参数，args[0] 为子命令
+     */
+    static CommandQuery parse(String label, String[] args, int requiredFilters) {
+        List<String> filters = new ArrayList<>(2);
+        int end = args.length;
+        int i = 1;
+        while (i < end && filters.size() < requiredFilters) {
+            filters.add(args[i++]);
+        }
+
+        int page = 1;
+        if (end > i && isNumber(args[end - 1])) {
+            page = Math.max(1, parsePage(args[end - 1]));
+            end--;
+        }
+        while (i < end) {
+            filters.add(args[i++]);
+        }
+
+        return new CommandQuery(label,
+                filters.size() > 0 ? normalize(filters.get(0)) : null,
+                filters.size() > 1 ? normalize(filters.get(1)) : null,
+                page, requiredFilters);
+    }
+
+    private static String normalize(String filter) {
+        return filter.isEmpty() || filter.equals("*") ? null : filter;
+    }
+
+    private static boolean isNumber(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parsePage(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    String getServerFilter() {
+        return serverFilter;
+    }
+
+    /**
+     * 是否指定了一个确切的服务器名（非前缀匹配）
+     */
+    boolean isExactServer() {
+        return serverFilter != null && !serverFilter.endsWith("*");
+    }
+
+    boolean hasRouteFilter() {
+        return routeFilter != null;
+    }
+
+    String getRouteFilter() {
+        return routeFilter;
+    }
+
+    int getPage() {
+        return page;
+    }
+
+    boolean matchesServer(String serverName) {
+        if (serverFilter == null) {
+            return true;
+        }
+        if (serverFilter.endsWith("*")) {
+            return serverName.regionMatches(true, 0, serverFilter, 0, serverFilter.length() - 1);
+        }
+        return serverName.equals(serverFilter);
+    }
+
+    /**
+     * @param index 路由在配置中的下标，从 0 开始
+     */
+    boolean matchesRoute(int index, RouteInfo route) {
+        if (routeFilter == null) {
+            return true;
+        }
+        if (isNumber(routeFilter)) {
+            return parsePage(routeFilter) == index + 1;
+        }
+        return matchesRouteAddress(route);
+    }
+
+    /**
+     * 只按地址片段匹配，用于不知道路由序号的场景（例如按玩家所在路由过滤）
+     */
+    boolean matchesRouteAddress(RouteInfo route) {
+        return routeFilter == null || route.getAddress().toLowerCase().contains(routeFilter.toLowerCase());
+    }
+
+    /**
+     * 生成查看指定页的完整命令，保留当前的过滤条件
+     */
+    String commandForPage(int targetPage) {
+        StringBuilder sb = new StringBuilder(label);
+        if (serverFilter != null || routeFilter != null || requiredFilters > 0) {
+            sb.append(' ').append(serverFilter != null ? serverFilter : "*");
+        }
+        if (routeFilter != null || requiredFilters > 1) {
+            sb.append(' ').append(routeFilter != null ? routeFilter : "*");
+        }
+        return sb.append(' ').append(targetPage).toString();
+    }
+}
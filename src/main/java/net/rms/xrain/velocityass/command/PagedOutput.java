@@ -0,0 +1,92 @@
+package net.rms.xrain.velocityass.command;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.format.NamedTextColor;
+
+/**
+ * 按行分页的命令输出。命令按顺序追加全部行，只有落在请求页内的行会被拼接，
+ * 最后合并成一个 Component 一次发送，无论有多少服务器、路由或玩家，单次输出最多 LINES_PER_PAGE 行。
+ * 页外的多行条目可以先用 isVisible 判断后直接 skip，避免为不会显示的内容格式化字符串。
+ */
+final class PagedOutput {
+    static final int LINES_PER_PAGE = 18;
+
+    private final String title;
+    private final CommandQuery query;
+    private final int firstLine;
+    private final TextComponent.Builder body;
+    private int lineCount;
+    private boolean bodyEmpty = true;
+
+    PagedOutput(String title, CommandQuery query) {
+        this.title = title;
+        this.query = query;
+        this.firstLine = (int) Math.min(Integer.MAX_VALUE, (long) (query.getPage() - 1) * LINES_PER_PAGE);
+        this.body = Component.text();
+    }
+
+    /**
+     * 接下来的 lines 行是否有任何一行落在当前页
+     */
+    boolean isVisible(int lines) {
+        return lineCount < firstLine + LINES_PER_PAGE && lineCount + lines > firstLine;
+    }
+
+    void skip(int lines) {
+        lineCount += lines;
+    }
+
+    void line(String text, NamedTextColor color) {
+        if (isVisible(1)) {
+            append(Component.text(text, color));
+        }
+        lineCount++;
+    }
+
+    void blank() {
+        if (isVisible(1)) {
+            append(Component.empty());
+        }
+        lineCount++;
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    private void append(Component component) {
+        if (!bodyEmpty) {
+            body.append(Component.newline());
+        }
+        body.append(component);
+        bodyEmpty = false;
+    }
+
+    Component build() {
+        int totalPages = Math.max(1, (lineCount + LINES_PER_PAGE - 1) / LINES_PER_PAGE);
+        int page = query.getPage();
+
+        TextComponent.Builder result = Component.text();
+        result.append(Component.text("=== " + title + " ===", NamedTextColor.GOLD));
+        if (totalPages > 1) {
+            result.append(Component.text(String.format(" (第 %d/%d 页)", Math.min(page, totalPages), totalPages),
+                    NamedTextColor.GRAY));
+        }
+
+        if (page > totalPages) {
+            result.append(Component.newline());
+            result.append(Component.text(String.format("页码超出范围，共 %d 页", totalPages), NamedTextColor.RED));
+            return result.build();
+        }
+        if (!bodyEmpty) {
+            result.append(Component.newline());
+            result.append(body.build());
+        }
+        if (page < totalPages) {
+            result.append(Component.newline());
+            result.append(Component.text("使用 " + query.commandForPage(page + 1) + " 查看下一页", NamedTextColor.GRAY));
+        }
+        return result.build();
+    }
+}
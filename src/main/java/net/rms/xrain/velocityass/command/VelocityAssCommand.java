@@ -4,21 +4,35 @@ import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
+import net.rms.xrain.velocityass.config.ConfigDiff;
+import net.rms.xrain.velocityass.config.LatencyHistogram;
+import net.rms.xrain.velocityass.config.LatencyStats;
+import net.rms.xrain.velocityass.config.RouteHistory;
 import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.RouteState;
 import net.rms.xrain.velocityass.config.ServerConfig;
+import net.rms.xrain.velocityass.service.BandwidthCollector;
+import net.rms.xrain.velocityass.service.BandwidthForecaster;
+import net.rms.xrain.velocityass.service.BandwidthTable;
+import net.rms.xrain.velocityass.service.JoinLatencyRecorder;
 import net.rms.xrain.velocityass.service.RouteManager;
+import net.rms.xrain.velocityass.service.RoutingTable;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 public class VelocityAssCommand implements SimpleCommand {
     private final RouteManager routeManager;
     private final Logger logger;
+    private final Object plugin;
     
-    public VelocityAssCommand(RouteManager routeManager, Logger logger) {
+    public VelocityAssCommand(RouteManager routeManager, Logger logger, Object plugin) {
         this.routeManager = routeManager;
         this.logger = logger;
+        this.plugin = plugin;
     }
     
     @Override
@@ -26,400 +40,539 @@ public class VelocityAssCommand implements SimpleCommand {
         String[] args = invocation.arguments();
         
         if (args.length == 0) {
-            showHelp(invocation);
+            invocation.source().sendMessage(renderHelp());
             return;
         }
         
-        switch (args[0].toLowerCase()) {
-            case "status":
-                showStatus(invocation);
-                break;
-            case "routes":
-                if (args.length > 1) {
-                    showServerRoutes(invocation, args[1]);
-                } else {
-                    showAllRoutes(invocation);
-                }
-                break;
-            case "bandwidth":
-            case "bw":
-                if (args.length > 1) {
-                    showServerBandwidth(invocation, args[1]);
-                } else {
-                    showAllBandwidth(invocation);
-                }
-                break;
-            case "debug":
-                showDebugBandwidth(invocation);
-                break;
-            case "reload":
-                reloadConfig(invocation);
-                break;
-            default:
-                showHelp(invocation);
-                break;
+        // 输出在调度线程上从当前快照生成，不占用调用命令的线程
+        routeManager.getProxyServer().getScheduler()
+                .buildTask(plugin, () -> executeAsync(invocation, args))
+                .schedule();
+    }
+    
+    private void executeAsync(Invocation invocation, String[] args) {
+        String subcommand = args[0].toLowerCase();
+        String label = "/" + invocation.alias() + " " + subcommand;
+        try {
+            switch (subcommand) {
+                case "status":
+                    invocation.source().sendMessage(renderStatus(CommandQuery.parse(label, args, 0)));
+                    break;
+                case "routes":
+                    invocation.source().sendMessage(renderRoutes(CommandQuery.parse(label, args, 0)));
+                    break;
+                case "bandwidth":
+                case "bw":
+                    invocation.source().sendMessage(renderBandwidth(CommandQuery.parse(label, args, 0)));
+                    break;
+                case "history":
+                    if (args.length > 1) {
+                        invocation.source().sendMessage(renderHistory(CommandQuery.parse(label, args, 2)));
+                    } else {
+                        invocation.source().sendMessage(Component.text("用法: /vass history <服务器名> [路由序号|地址] [页码]", NamedTextColor.RED));
+                    }
+                    break;
+                case "metrics":
+                    invocation.source().sendMessage(renderJoinLatency(CommandQuery.parse(label, args, 0)));
+                    break;
+                case "debug":
+                    invocation.source().sendMessage(renderDebugBandwidth(CommandQuery.parse(label, args, 0)));
+                    break;
+                case "reload":
+                    reloadConfig(invocation);
+                    break;
+                default:
+                    invocation.source().sendMessage(renderHelp());
+                    break;
+            }
+        } catch (Exception e) {
+            invocation.source().sendMessage(Component.text("命令执行失败: " + e.getMessage(), NamedTextColor.RED));
+            logger.error("执行命令 {} 失败", label, e);
         }
     }
     
-    private void showHelp(Invocation invocation) {
-        invocation.source().sendMessage(Component.text("=== VelocityASS 命令帮助 ===", NamedTextColor.GOLD));
-        invocation.source().sendMessage(Component.text("/vass status - 显示插件状态", NamedTextColor.YELLOW));
-        invocation.source().sendMessage(Component.text("/vass routes [服务器名] - 显示路由信息", NamedTextColor.YELLOW));
-        invocation.source().sendMessage(Component.text("/vass bandwidth|bw [服务器名] - 显示带宽使用情况", NamedTextColor.YELLOW));
-        invocation.source().sendMessage(Component.text("/vass debug - 显示详细带宽调试信息", NamedTextColor.YELLOW));
-        invocation.source().sendMessage(Component.text("/vass reload - 重新加载配置", NamedTextColor.YELLOW));
+    private Component renderHelp() {
+        PagedOutput out = new PagedOutput("VelocityASS 命令帮助", CommandQuery.parse("/vass", new String[]{"help"}, 0));
+        out.line("/vass status [服务器] - 显示插件状态", NamedTextColor.YELLOW);
+        out.line("/vass routes [服务器] [路由] [页码] - 显示路由信息", NamedTextColor.YELLOW);
+        out.line("/vass bandwidth|bw [服务器] [路由] [页码] - 显示带宽使用情况", NamedTextColor.YELLOW);
+        out.line("/vass history <服务器> [路由] [页码] - 显示路由最近1小时/24小时的历史走势", NamedTextColor.YELLOW);
+        out.line("/vass metrics [服务器] [页码] - 显示选路和后端连接耗时 (p50/p99/最大)", NamedTextColor.YELLOW);
+        out.line("/vass debug [服务器] [路由] [页码] - 显示详细带宽调试信息", NamedTextColor.YELLOW);
+        out.line("/vass reload - 重新加载配置", NamedTextColor.YELLOW);
+        out.line("服务器以 * 结尾表示前缀匹配，路由可以是序号或地址片段，* 表示全部", NamedTextColor.GRAY);
+        return out.build();
     }
     
-    private void showStatus(Invocation invocation) {
-        invocation.source().sendMessage(Component.text("=== VelocityASS 状态 ===", NamedTextColor.GOLD));
-        
-        int totalServers = routeManager.getAllServerConfigs().size();
-        int totalRoutes = routeManager.getAllServerConfigs().values().stream()
-                .mapToInt(config -> config.getRoutes().size())
-                .sum();
-        
-        invocation.source().sendMessage(Component.text("配置的服务器数量: " + totalServers, NamedTextColor.GREEN));
-        invocation.source().sendMessage(Component.text("总路由数量: " + totalRoutes, NamedTextColor.GREEN));
-        
-        for (ServerConfig config : routeManager.getAllServerConfigs().values()) {
-            int availableRoutes = routeManager.getAvailableRouteCount(config.getServerName());
-            invocation.source().sendMessage(Component.text(
-                    config.getServerName() + ": " + availableRoutes + "/" + config.getRoutes().size() + " 可用",
-                    availableRoutes > 0 ? NamedTextColor.GREEN : NamedTextColor.RED
-            ));
+    /**
+     * 确切指定的服务器不存在时返回错误信息，否则返回 null
+     */
+    private Component checkServer(RoutingTable table, CommandQuery query) {
+        if (query.isExactServer() && table.getServerRoutes(query.getServerFilter()) == null) {
+            return Component.text("未找到服务器: " + query.getServerFilter(), NamedTextColor.RED);
         }
+        return null;
     }
     
-    private void showAllRoutes(Invocation invocation) {
-        invocation.source().sendMessage(Component.text("=== 所有服务器路由 ===", NamedTextColor.GOLD));
+    private Component renderStatus(CommandQuery query) {
+        RoutingTable table = routeManager.getRoutingTable();
+        PagedOutput out = new PagedOutput("VelocityASS 状态", query);
+        
+        int totalRoutes = 0;
+        for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+            totalRoutes += table.getServer(s).getRouteCount();
+        }
+        
+        out.line("配置的服务器数量: " + table.getServerCount()
+                + " (配置版本 " + routeManager.getConfigManager().getSnapshot().getVersion() + ")", NamedTextColor.GREEN);
+        out.line("总路由数量: " + totalRoutes, NamedTextColor.GREEN);
+        out.line(String.format("路由重定向: %d 次 | 平均耗时: %.3fms | 最大耗时: %.3fms",
+                        routeManager.getRedirectCount(), routeManager.getAverageRedirectMillis(),
+                        routeManager.getMaxRedirectMillis()),
+                NamedTextColor.GREEN);
         
-        for (ServerConfig config : routeManager.getAllServerConfigs().values()) {
-            showServerRoutes(invocation, config.getServerName());
-            invocation.source().sendMessage(Component.text(" "));
+        for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+            RoutingTable.ServerRoutes serverRoutes = table.getServer(s);
+            if (!query.matchesServer(serverRoutes.getServerName())) {
+                continue;
+            }
+            int availableRoutes = serverRoutes.getCandidateCount();
+            out.line(serverRoutes.getServerName() + ": " + availableRoutes + "/" + serverRoutes.getRouteCount() + " 可用",
+                    availableRoutes > 0 ? NamedTextColor.GREEN : NamedTextColor.RED);
         }
+        return out.build();
     }
     
-    private void showServerRoutes(Invocation invocation, String serverName) {
-        ServerConfig config = routeManager.getConfigManager().getServerConfig(serverName);
-        if (config == null) {
-            invocation.source().sendMessage(Component.text("未找到服务器: " + serverName, NamedTextColor.RED));
-            return;
+    private Component renderRoutes(CommandQuery query) {
+        RoutingTable table = routeManager.getRoutingTable();
+        Component error = checkServer(table, query);
+        if (error != null) {
+            return error;
         }
         
-        invocation.source().sendMessage(Component.text("=== " + serverName + " 路由信息 ===", NamedTextColor.GOLD));
-        invocation.source().sendMessage(Component.text("自动排序: " + (config.isAutoSort() ? "启用" : "禁用"), NamedTextColor.YELLOW));
-        invocation.source().sendMessage(Component.text("检测间隔: " + config.getPingInterval() + "秒", NamedTextColor.YELLOW));
-        
-        for (int i = 0; i < config.getRoutes().size(); i++) {
-            RouteInfo route = config.getRoutes().get(i);
-            NamedTextColor color = route.isAvailable() && route.isEnabled() ? NamedTextColor.GREEN : NamedTextColor.RED;
+        PagedOutput out = new PagedOutput(query.isExactServer() ? query.getServerFilter() + " 路由信息" : "服务器路由", query);
+        for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+            RoutingTable.ServerRoutes serverRoutes = table.getServer(s);
+            if (!query.matchesServer(serverRoutes.getServerName())) {
+                continue;
+            }
             
-            String status = route.isEnabled() ? 
-                    (route.isAvailable() ? "可用" : "不可用") : "已禁用";
-            String ping = route.getLastPing() > 0 ? route.getLastPing() + "ms" : "未知";
+            out.line("--- " + serverRoutes.getServerName() + " ---", NamedTextColor.GOLD);
+            ServerConfig config = routeManager.getConfigManager().getServerConfig(serverRoutes.getServerName());
+            if (config != null) {
+                out.line(String.format("自动排序: %s | 检测间隔: %d秒 | 选路策略: %s",
+                                config.isAutoSort() ? "启用" : "禁用", config.getPingInterval(),
+                                config.getRouteStrategy().getConfigName()),
+                        NamedTextColor.YELLOW);
+            }
             
-            invocation.source().sendMessage(Component.text(
-                    String.format("  %d. %s (优先级: %d, 状态: %s, 延迟: %s)",
-                            i + 1, route.getAddress(), route.getPriority(), status, ping),
-                    color
-            ));
+            for (int i = 0, routes = serverRoutes.getRouteCount(); i < routes; i++) {
+                RouteInfo route = serverRoutes.getRoute(i);
+                if (!query.matchesRoute(i, route)) {
+                    continue;
+                }
+                if (!out.isVisible(1)) {
+                    out.skip(1);
+                    continue;
+                }
+                
+                RouteState state = route.getState();
+                NamedTextColor color = state.isAvailable() && route.isEnabled() ? NamedTextColor.GREEN : NamedTextColor.RED;
+                String status = route.isEnabled() ? 
+                        (state.isAvailable() ? "可用" : "不可用") : "已禁用";
+                String ping = formatLatency(route);
+                String players = state.getOnlinePlayers() >= 0 
+                        ? String.format(", 在线: %d/%d", state.getOnlinePlayers(), state.getMaxPlayers()) : "";
+                
+                out.line(String.format("  %d. %s (优先级: %d, 状态: %s, 延迟: %s%s, 已分配: %d次)",
+                                i + 1, route.getAddress(), route.getPriority(), status, ping, players,
+                                route.getSelectionCount()),
+                        color);
+            }
+            
+            RouteInfo bestRoute = serverRoutes.getBestRoute();
+            if (bestRoute != null) {
+                out.line("当前最佳路由: " + bestRoute.getAddress(), NamedTextColor.AQUA);
+            } else {
+                out.line("无可用路由", NamedTextColor.RED);
+            }
+            out.blank();
         }
-        
-        RouteInfo bestRoute = config.getBestRoute();
-        if (bestRoute != null) {
-            invocation.source().sendMessage(Component.text("当前最佳路由: " + bestRoute.getAddress(), NamedTextColor.AQUA));
-        } else {
-            invocation.source().sendMessage(Component.text("无可用路由", NamedTextColor.RED));
+        return out.build();
+    }
+    
+    private String formatLatency(RouteInfo route) {
+        LatencyStats stats = route.getLatencyStats();
+        if (stats.hasSamples()) {
+            return String.format("%.1fms, p50 %.1fms, p95 %.1fms, 抖动 %.1fms",
+                    stats.getEwmaMillis(), stats.getP50Millis(), stats.getP95Millis(), stats.getJitterMillis());
         }
+        return route.getLastPing() > 0 ? route.getLastPing() + "ms" : "未知";
     }
     
     private void reloadConfig(Invocation invocation) {
         try {
-            routeManager.getConfigManager().reloadConfig();
-            invocation.source().sendMessage(Component.text("配置重新加载成功！", NamedTextColor.GREEN));
+            ConfigDiff diff = routeManager.reloadConfig();
+            invocation.source().sendMessage(Component.text("配置重新加载成功！" + diff, NamedTextColor.GREEN));
             logger.info("配置被 {} 重新加载", getSourceName(invocation));
         } catch (Exception e) {
-            invocation.source().sendMessage(Component.text("配置重新加载失败: " + e.getMessage(), NamedTextColor.RED));
+            invocation.source().sendMessage(Component.text("配置重新加载失败，继续使用当前配置: " + e.getMessage(), NamedTextColor.RED));
             logger.error("配置重新加载失败", e);
         }
     }
     
-    private void showAllBandwidth(Invocation invocation) {
-        invocation.source().sendMessage(Component.text("=== 所有服务器带宽使用情况 ===", NamedTextColor.GOLD));
-        
-        routeManager.updateAllRoutesBandwidth();
+    private Component renderBandwidth(CommandQuery query) {
+        RoutingTable table = routeManager.getRoutingTable();
+        Component error = checkServer(table, query);
+        if (error != null) {
+            return error;
+        }
         
-        for (ServerConfig config : routeManager.getAllServerConfigs().values()) {
-            showServerBandwidth(invocation, config.getServerName());
-            invocation.source().sendMessage(Component.text(" "));
+        PagedOutput out = new PagedOutput(query.isExactServer() ? query.getServerFilter() + " 带宽使用情况" : "服务器带宽使用情况", query);
+        long now = System.currentTimeMillis();
+        for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+            RoutingTable.ServerRoutes serverRoutes = table.getServer(s);
+            if (query.matchesServer(serverRoutes.getServerName())) {
+                appendServerBandwidth(out, query, serverRoutes, now);
+                out.blank();
+            }
         }
+        return out.build();
     }
     
-    private void showServerBandwidth(Invocation invocation, String serverName) {
-        ServerConfig config = routeManager.getConfigManager().getServerConfig(serverName);
-        if (config == null) {
-            invocation.source().sendMessage(Component.text("未找到服务器: " + serverName, NamedTextColor.RED));
-            return;
-        }
-        
-        routeManager.updateAllRoutesBandwidth();
+    private void appendServerBandwidth(PagedOutput out, CommandQuery query, RoutingTable.ServerRoutes serverRoutes, long now) {
+        String serverName = serverRoutes.getServerName();
+        out.line("--- " + serverName + " ---", NamedTextColor.GOLD);
         
-        invocation.source().sendMessage(Component.text("=== " + serverName + " 带宽使用情况 ===", NamedTextColor.GOLD));
-        
-        for (int i = 0; i < config.getRoutes().size(); i++) {
-            RouteInfo route = config.getRoutes().get(i);
+        // 玩家数和带宽都由带宽汇总任务增量维护，这里只读取每条路由的当前快照
+        int totalPlayers = 0;
+        double totalBandwidth = 0.0;
+        for (int i = 0, routes = serverRoutes.getRouteCount(); i < routes; i++) {
+            RouteInfo route = serverRoutes.getRoute(i);
+            RouteState state = route.getState();
+            double usage = state.getBandwidthUsage();
+            int players = route.getConnectedPlayerCount();
+            totalPlayers += players;
+            totalBandwidth += usage;
+            
+            if (!query.matchesRoute(i, route)) {
+                continue;
+            }
+            if (!out.isVisible(3)) {
+                out.skip(3);
+                continue;
+            }
+            
+            long limit = route.isBandwidthLimited() ? route.getCurrentBandwidthLimit() : 0;
+            double utilization = limit > 0 ? usage / limit * 100.0 : 0.0;
             
             NamedTextColor color;
             if (!route.isEnabled()) {
                 color = NamedTextColor.GRAY;
-            } else if (!route.isAvailable()) {
+            } else if (!state.isAvailable()) {
                 color = NamedTextColor.RED;
-            } else if (route.isBandwidthLimited() && route.getBandwidthUtilization() > 85.0) {
+            } else if (limit > 0 && utilization > 85.0) {
                 color = NamedTextColor.RED;
-            } else if (route.isBandwidthLimited() && route.getBandwidthUtilization() > 60.0) {
+            } else if (limit > 0 && utilization > 60.0) {
                 color = NamedTextColor.YELLOW;
             } else {
                 color = NamedTextColor.GREEN;
             }
             
             String status = route.isEnabled() ? 
-                    (route.isAvailable() ? "可用" : "不可用") : "已禁用";
+                    (state.isAvailable() ? "可用" : "不可用") : "已禁用";
             
             String bandwidthInfo;
-            if (route.isBandwidthLimited()) {
+            if (limit > 0) {
                 bandwidthInfo = String.format("%.2f/%.2f KB/s (%.1f%%)",
-                        route.getCurrentBandwidthUsage() / 1024.0,
-                        route.getMaxBandwidth() / 1024.0,
-                        route.getBandwidthUtilization());
+                        usage / 1024.0, limit / 1024.0, utilization);
             } else {
-                bandwidthInfo = String.format("%.2f KB/s (无限制)",
-                        route.getCurrentBandwidthUsage() / 1024.0);
+                bandwidthInfo = String.format("%.2f KB/s (无限制)", usage / 1024.0);
+            }
+            if (state.getReservedBandwidth() > 0) {
+                bandwidthInfo += String.format(" 预留 %.2f KB/s", state.getReservedBandwidth() / 1024.0);
+            }
+            double headroom = route.getForecastHeadroom();
+            if (!Double.isInfinite(headroom)) {
+                bandwidthInfo += String.format(" | %d分钟内预测余量 %.2f KB/s",
+                        BandwidthForecaster.HORIZON_MINUTES, headroom / 1024.0);
             }
             
-            String playerInfo = String.format("玩家: %d", getActualPlayerCountForRoute(serverName, route.getAddress()));
-            
-            invocation.source().sendMessage(Component.text(
-                    String.format("  %d. %s (优先级: %d)",
-                            i + 1, route.getAddress(), route.getPriority()),
-                    NamedTextColor.WHITE
-            ));
-            
-            invocation.source().sendMessage(Component.text(
-                    String.format("     状态: %s | 带宽: %s | %s",
-                            status, bandwidthInfo, playerInfo),
-                    color
-            ));
+            out.line(String.format("  %d. %s (优先级: %d)", i + 1, route.getAddress(), route.getPriority()),
+                    NamedTextColor.WHITE);
+            out.line(String.format("     状态: %s | 带宽: %s | 玩家: %d", status, bandwidthInfo, players), color);
             
-            String ping = route.getLastPing() > 0 ? route.getLastPing() + "ms" : "未知";
-            invocation.source().sendMessage(Component.text(
-                    String.format("     延迟: %s | 最后更新: %d秒前",
-                            ping, (System.currentTimeMillis() - route.getLastBandwidthUpdate()) / 1000),
-                    NamedTextColor.GRAY
-            ));
+            String ping = route.getSmoothedPing() > 0 ? String.format("%.1fms", route.getSmoothedPing()) : "未知";
+            out.line(String.format("     延迟: %s | 最后更新: %d秒前",
+                            ping, (now - state.getLastBandwidthUpdate()) / 1000),
+                    NamedTextColor.GRAY);
         }
         
-        RouteInfo bestRoute = routeManager.getBandwidthSelector()
-                .selectBestRoute(config, java.util.UUID.randomUUID());
+        RouteInfo bestRoute = routeManager.previewRoute(serverName);
         if (bestRoute != null) {
-            invocation.source().sendMessage(Component.text(
-                    "推荐路由: " + bestRoute.getAddress() + 
+            out.line("推荐路由: " + bestRoute.getAddress() + 
                     " (带宽使用率: " + String.format("%.1f%%", bestRoute.getBandwidthUtilization()) + ")",
-                    NamedTextColor.AQUA));
+                    NamedTextColor.AQUA);
         } else {
-            invocation.source().sendMessage(Component.text("无可用路由", NamedTextColor.RED));
+            out.line("无可用路由", NamedTextColor.RED);
         }
         
-        int totalPlayers = getActualPlayerCount(serverName);
-        double totalBandwidth = config.getRoutes().stream()
-                .mapToDouble(RouteInfo::getCurrentBandwidthUsage)
-                .sum();
-        
-        invocation.source().sendMessage(Component.text(
-                String.format("总计: %d 玩家, %.2f KB/s 总带宽",
-                        totalPlayers, totalBandwidth / 1024.0),
-                NamedTextColor.AQUA));
+        out.line(String.format("总计: %d 玩家, %.2f KB/s 总带宽", totalPlayers, totalBandwidth / 1024.0),
+                NamedTextColor.AQUA);
     }
     
-    private void showDebugBandwidth(Invocation invocation) {
-        invocation.source().sendMessage(Component.text("=== 带宽调试信息 ===", NamedTextColor.GOLD));
+    private Component renderJoinLatency(CommandQuery query) {
+        RoutingTable table = routeManager.getRoutingTable();
+        Component error = checkServer(table, query);
+        if (error != null) {
+            return error;
+        }
         
-        try {
-            com.velocitypowered.api.proxy.player.BandwidthManager bm = 
-                    routeManager.getBandwidthSelector().getBandwidthManager();
-            
-            if (bm == null) {
-                invocation.source().sendMessage(Component.text("无法获取BandwidthManager", NamedTextColor.RED));
-                return;
+        JoinLatencyRecorder recorder = routeManager.getJoinLatency();
+        PagedOutput out = new PagedOutput("加入耗时统计", query);
+        for (JoinLatencyRecorder.Stage stage : JoinLatencyRecorder.Stage.values()) {
+            appendLatencyLine(out, "  " + stage.getDisplayName(), recorder.getGlobal(stage), NamedTextColor.AQUA);
+        }
+        
+        for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+            RoutingTable.ServerRoutes serverRoutes = table.getServer(s);
+            String serverName = serverRoutes.getServerName();
+            if (!query.matchesServer(serverName) || recorder.getServer(serverName, JoinLatencyRecorder.Stage.SELECT) == null) {
+                continue;
             }
             
-            boolean trackingEnabled = bm.isBandwidthTrackingEnabled();
-            long updateInterval = bm.getUpdateInterval();
-            invocation.source().sendMessage(Component.text(
-                    String.format("带宽追踪: %s | 更新间隔: %dms", 
-                            trackingEnabled ? "已启用" : "已禁用", updateInterval),
-                    trackingEnabled ? NamedTextColor.GREEN : NamedTextColor.RED));
-            
-            com.velocitypowered.api.proxy.player.BandwidthSnapshot snapshot = bm.getTotalBandwidthSnapshot();
-            invocation.source().sendMessage(Component.text(
-                    String.format("全局统计: %d 玩家", snapshot.getTrackedPlayerCount()),
-                    NamedTextColor.YELLOW));
-            invocation.source().sendMessage(Component.text(
-                    String.format("总下载速度: %.2f KB/s | 总上传速度: %.2f KB/s",
-                            snapshot.getTotalDownloadSpeed() / 1024.0,
-                            snapshot.getTotalUploadSpeed() / 1024.0),
-                    NamedTextColor.WHITE));
-            invocation.source().sendMessage(Component.text(
-                    String.format("平均每玩家: 下载 %.2f KB/s | 上传 %.2f KB/s",
-                            snapshot.getAverageDownloadSpeedPerPlayer() / 1024.0,
-                            snapshot.getAverageUploadSpeedPerPlayer() / 1024.0),
-                    NamedTextColor.WHITE));
-            invocation.source().sendMessage(Component.text(
-                    String.format("峰值: 下载 %.2f KB/s | 上传 %.2f KB/s",
-                            snapshot.getPeakTotalDownloadSpeed() / 1024.0,
-                            snapshot.getPeakTotalUploadSpeed() / 1024.0),
-                    NamedTextColor.AQUA));
-            
-            invocation.source().sendMessage(Component.text("=== 各玩家详细统计 ===", NamedTextColor.GOLD));
-            
-            java.util.Collection<com.velocitypowered.api.proxy.player.PlayerBandwidthStats> allStats = 
-                    bm.getAllPlayerBandwidthStats();
-            
-            if (allStats.isEmpty()) {
-                invocation.source().sendMessage(Component.text("暂无玩家带宽数据", NamedTextColor.GRAY));
-            } else {
-                java.util.Map<java.util.UUID, String> playerRoutes = routeManager.getPlayerRouteMapping();
-                
-                for (com.velocitypowered.api.proxy.player.PlayerBandwidthStats stats : allStats) {
-                    double totalBandwidth = stats.getDownloadSpeed() + stats.getUploadSpeed();
-                    NamedTextColor color = totalBandwidth > 100 * 1024 ? NamedTextColor.YELLOW : NamedTextColor.GREEN;
-                    
-                    java.util.Optional<Player> player = routeManager.getProxyServer()
-                            .getAllPlayers().stream()
-                            .filter(p -> p.getUsername().equals(stats.getPlayerUsername()))
-                            .findFirst();
-                    
-                    String routeInfo = "未知";
-                    String serverName = stats.getCurrentServerName();
-                    
-                    if (player.isPresent()) {
-                        String routeAddress = playerRoutes.get(player.get().getUniqueId());
-                        if (routeAddress != null) {
-                            for (ServerConfig config : routeManager.getAllServerConfigs().values()) {
-                                for (RouteInfo route : config.getRoutes()) {
-                                    if (routeAddress.equals(route.getAddress())) {
-                                        routeInfo = String.format("%s -> %s", config.getServerName(), routeAddress);
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        
-                        if (player.get().getCurrentServer().isPresent()) {
-                            serverName = player.get().getCurrentServer().get().getServerInfo().getName();
-                        }
-                    }
-                    
-                    invocation.source().sendMessage(Component.text(
-                            String.format("%s (API服务器: %s | 路由: %s)",
-                                    stats.getPlayerUsername(),
-                                    serverName != null ? serverName : "null",
-                                    routeInfo),
-                            NamedTextColor.WHITE));
-                    invocation.source().sendMessage(Component.text(
-                            String.format("  带宽: 下载 %.2f KB/s | 上传 %.2f KB/s | 总计 %.2f KB/s",
-                                    stats.getDownloadSpeed() / 1024.0,
-                                    stats.getUploadSpeed() / 1024.0,
-                                    totalBandwidth / 1024.0),
-                            color));
-                    invocation.source().sendMessage(Component.text(
-                            String.format("  总流量: 接收 %.2f MB | 发送 %.2f MB",
-                                    stats.getTotalBytesReceived() / 1024.0 / 1024.0,
-                                    stats.getTotalBytesSent() / 1024.0 / 1024.0),
-                            NamedTextColor.GRAY));
+            out.line("--- " + serverName + " ---", NamedTextColor.GOLD);
+            for (JoinLatencyRecorder.Stage stage : JoinLatencyRecorder.Stage.values()) {
+                appendLatencyLine(out, "  " + stage.getDisplayName(), recorder.getServer(serverName, stage), NamedTextColor.YELLOW);
+            }
+            for (int i = 0, routes = serverRoutes.getRouteCount(); i < routes; i++) {
+                RouteInfo route = serverRoutes.getRoute(i);
+                if (query.matchesRoute(i, route) && route.getConnectLatency().getCount() > 0) {
+                    appendLatencyLine(out, "    " + route.getAddress() + " 连接", route.getConnectLatency(), NamedTextColor.WHITE);
                 }
             }
-            
-        } catch (Exception e) {
-            invocation.source().sendMessage(Component.text("获取带宽调试信息失败: " + e.getMessage(), NamedTextColor.RED));
-            logger.error("获取带宽调试信息失败", e);
         }
+        return out.build();
     }
     
-    private String getSourceName(Invocation invocation) {
-        if (invocation.source() instanceof Player) {
-            return ((Player) invocation.source()).getUsername();
+    private void appendLatencyLine(PagedOutput out, String label, LatencyHistogram histogram, NamedTextColor color) {
+        if (!out.isVisible(1)) {
+            out.skip(1);
+            return;
         }
-        return "控制台";
+        if (histogram == null || histogram.getCount() == 0) {
+            out.line(label + ": 暂无数据", NamedTextColor.GRAY);
+            return;
+        }
+        out.line(String.format("%s: %d次 | p50 %s | p99 %s | 最大 %s", label, histogram.getCount(),
+                        formatNanos(histogram.getPercentileNanos(0.50)),
+                        formatNanos(histogram.getPercentileNanos(0.99)),
+                        formatNanos(histogram.getMaxNanos())),
+                color);
     }
     
-    private int getActualPlayerCount(String serverName) {
-        try {
-            ServerConfig config = routeManager.getConfigManager().getServerConfig(serverName);
-            if (config == null) {
-                return 0;
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format("%.1fμs", nanos / 1_000.0);
+        }
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+    
+    private Component renderHistory(CommandQuery query) {
+        RoutingTable table = routeManager.getRoutingTable();
+        Component error = checkServer(table, query);
+        if (error != null) {
+            return error;
+        }
+        
+        PagedOutput out = new PagedOutput(query.isExactServer() ? query.getServerFilter() + " 路由历史" : "路由历史", query);
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder(128);
+        double[] summary = new double[4];
+        int matched = 0;
+        for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+            RoutingTable.ServerRoutes serverRoutes = table.getServer(s);
+            if (!query.matchesServer(serverRoutes.getServerName())) {
+                continue;
             }
-            
-            int totalCount = 0;
-            for (RouteInfo route : config.getRoutes()) {
-                totalCount += getActualPlayerCountForRoute(serverName, route.getAddress());
+            if (!query.isExactServer()) {
+                out.line("--- " + serverRoutes.getServerName() + " ---", NamedTextColor.GOLD);
             }
             
-            return totalCount;
-        } catch (Exception e) {
-            logger.error("获取服务器 {} 的实际玩家数量失败", serverName, e);
-            return 0;
+            for (int i = 0, routes = serverRoutes.getRouteCount(); i < routes; i++) {
+                RouteInfo route = serverRoutes.getRoute(i);
+                if (!query.matchesRoute(i, route)) {
+                    continue;
+                }
+                matched++;
+                RouteHistory history = route.getHistory();
+                out.line(String.format("  %d. %s", i + 1, route.getAddress()), NamedTextColor.WHITE);
+                
+                appendHistoryLine(out, sb, summary, history, RouteHistory.Resolution.FINE, now, "1小时");
+                appendHistoryLine(out, sb, summary, history, RouteHistory.Resolution.COARSE, now, "24小时");
+            }
+        }
+        
+        if (matched == 0 && query.hasRouteFilter()) {
+            return Component.text("未找到路由: " + query.getRouteFilter(), NamedTextColor.RED);
         }
+        return out.build();
     }
     
-    private int getActualPlayerCountForRoute(String serverName, String routeAddress) {
+    private void appendHistoryLine(PagedOutput out, StringBuilder sb, double[] summary, RouteHistory history,
+                                   RouteHistory.Resolution resolution, long now, String label) {
+        long window = resolution.getSpanSeconds();
+        int width = resolution == RouteHistory.Resolution.FINE ? 60 : 48;
+        
+        if (!history.hasData(resolution, now, window)) {
+            out.line("     " + label + ": 暂无数据", NamedTextColor.GRAY);
+            return;
+        }
+        if (!out.isVisible(2)) {
+            out.skip(2);
+            return;
+        }
+        
+        sb.setLength(0);
+        sb.append("     ").append(label).append(" 带宽 [");
+        history.appendSparkline(sb, resolution, RouteHistory.Metric.USAGE, now, window, width);
+        sb.append(']');
+        out.line(sb.toString(), NamedTextColor.AQUA);
+        
+        sb.setLength(0);
+        sb.append("       ");
+        history.summarize(resolution, RouteHistory.Metric.USAGE, now, window, summary);
+        sb.append(String.format("带宽 %.1f/%.1f/%.1f KB/s", summary[0] / 1024.0, summary[1] / 1024.0, summary[2] / 1024.0));
+        history.summarize(resolution, RouteHistory.Metric.PLAYERS, now, window, summary);
+        sb.append(String.format(" | 玩家 %.0f/%.1f/%.0f", summary[0], summary[1], summary[2]));
+        history.summarize(resolution, RouteHistory.Metric.LATENCY, now, window, summary);
+        if (summary[3] > 0) {
+            sb.append(String.format(" | 延迟 %.1f/%.1f/%.1fms", summary[0], summary[1], summary[2]));
+        }
+        history.summarize(resolution, RouteHistory.Metric.LIMIT, now, window, summary);
+        if (summary[3] > 0 && summary[2] > 0) {
+            sb.append(String.format(" | 上限 %.1f~%.1f KB/s", summary[0] / 1024.0, summary[2] / 1024.0));
+        }
+        sb.append(" (最小/平均/最大)");
+        out.line(sb.toString(), NamedTextColor.GRAY);
+    }
+    
+    private Component renderDebugBandwidth(CommandQuery query) {
         try {
-            com.velocitypowered.api.proxy.player.BandwidthManager bm = 
-                    routeManager.getBandwidthSelector().getBandwidthManager();
+            BandwidthCollector collector = routeManager.getBandwidthCollector();
+            com.velocitypowered.api.proxy.player.BandwidthManager bm = collector.getBandwidthManager();
             
             if (bm == null) {
-                return 0;
+                return Component.text("无法获取BandwidthManager", NamedTextColor.RED);
             }
             
-            java.util.Collection<com.velocitypowered.api.proxy.player.PlayerBandwidthStats> allStats = 
-                    bm.getAllPlayerBandwidthStats();
+            PagedOutput out = new PagedOutput("带宽调试信息", query);
+            boolean trackingEnabled = bm.isBandwidthTrackingEnabled();
+            long updateInterval = bm.getUpdateInterval();
+            out.line(String.format("带宽追踪: %s | 更新间隔: %dms", 
+                            trackingEnabled ? "已启用" : "已禁用", updateInterval),
+                    trackingEnabled ? NamedTextColor.GREEN : NamedTextColor.RED);
+            
+            BandwidthTable table = collector.getTable();
+            int trackedPlayers = table.size();
+            out.line(String.format("全局统计: %d 玩家 (%d秒前采集)", trackedPlayers,
+                            Math.max(0, (System.currentTimeMillis() - table.getCollectedAt()) / 1000)),
+                    NamedTextColor.YELLOW);
+            out.line(String.format("总下载速度: %.2f KB/s | 总上传速度: %.2f KB/s",
+                            table.getTotalDownloadSpeed() / 1024.0,
+                            table.getTotalUploadSpeed() / 1024.0),
+                    NamedTextColor.WHITE);
+            out.line(String.format("平均每玩家: 下载 %.2f KB/s | 上传 %.2f KB/s",
+                            trackedPlayers > 0 ? table.getTotalDownloadSpeed() / trackedPlayers / 1024.0 : 0.0,
+                            trackedPlayers > 0 ? table.getTotalUploadSpeed() / trackedPlayers / 1024.0 : 0.0),
+                    NamedTextColor.WHITE);
+            out.line(String.format("峰值: 下载 %.2f KB/s | 上传 %.2f KB/s",
+                            collector.getPeakDownloadSpeed() / 1024.0,
+                            collector.getPeakUploadSpeed() / 1024.0),
+                    NamedTextColor.AQUA);
             
-            java.util.Map<java.util.UUID, String> playerRoutes = routeManager.getPlayerRouteMapping();
+            out.line("--- 各玩家详细统计 ---", NamedTextColor.GOLD);
             
-            int count = 0;
-            for (com.velocitypowered.api.proxy.player.PlayerBandwidthStats stats : allStats) {
-                java.util.Optional<Player> player = routeManager.getProxyServer()
-                        .getAllPlayers().stream()
-                        .filter(p -> p.getUsername().equals(stats.getPlayerUsername()))
-                        .findFirst();
+            int shownPlayers = 0;
+            for (int i = 0; i < trackedPlayers; i++) {
+                UUID playerId = table.getPlayerId(i);
+                RouteInfo assignedRoute = routeManager.getPlayerRoute(playerId);
+                String routeServer = assignedRoute != null ? routeManager.getPlayerRouteServer(playerId) : null;
+                String serverName = table.getServerName(i);
                 
-                if (player.isPresent()) {
-                    String playerRouteAddress = playerRoutes.get(player.get().getUniqueId());
-                    if (routeAddress.equals(playerRouteAddress)) {
-                        count++;
-                    }
+                if (query.getServerFilter() != null
+                        && !(serverName != null && query.matchesServer(serverName))
+                        && !(routeServer != null && query.matchesServer(routeServer))) {
+                    continue;
+                }
+                if (query.hasRouteFilter() && (assignedRoute == null || !query.matchesRouteAddress(assignedRoute))) {
+                    continue;
+                }
+                shownPlayers++;
+                if (!out.isVisible(3)) {
+                    out.skip(3);
+                    continue;
                 }
+                
+                double totalBandwidth = table.getBandwidth(i);
+                NamedTextColor color = totalBandwidth > 100 * 1024 ? NamedTextColor.YELLOW : NamedTextColor.GREEN;
+                
+                String routeInfo = assignedRoute != null
+                        ? String.format("%s -> %s", routeServer, assignedRoute.getAddress()) : "未知";
+                
+                java.util.Optional<Player> player = routeManager.getProxyServer().getPlayer(playerId);
+                if (player.isPresent() && player.get().getCurrentServer().isPresent()) {
+                    serverName = player.get().getCurrentServer().get().getServerInfo().getName();
+                }
+                
+                out.line(String.format("%s (API服务器: %s | 路由: %s)",
+                                table.getUsername(i),
+                                serverName != null ? serverName : "null",
+                                routeInfo),
+                        NamedTextColor.WHITE);
+                out.line(String.format("  带宽: 下载 %.2f KB/s | 上传 %.2f KB/s | 总计 %.2f KB/s",
+                                table.getDownloadSpeed(i) / 1024.0,
+                                table.getUploadSpeed(i) / 1024.0,
+                                totalBandwidth / 1024.0),
+                        color);
+                out.line(String.format("  总流量: 接收 %.2f MB | 发送 %.2f MB",
+                                table.getBytesReceived(i) / 1024.0 / 1024.0,
+                                table.getBytesSent(i) / 1024.0 / 1024.0),
+                        NamedTextColor.GRAY);
             }
             
-            return count;
+            if (shownPlayers == 0) {
+                out.line("暂无玩家带宽数据", NamedTextColor.GRAY);
+            }
+            return out.build();
         } catch (Exception e) {
-            logger.error("获取路由 {} 的实际玩家数量失败", routeAddress, e);
-            return 0;
+            logger.error("获取带宽调试信息失败", e);
+            return Component.text("获取带宽调试信息失败: " + e.getMessage(), NamedTextColor.RED);
         }
     }
     
+    private String getSourceName(Invocation invocation) {
+        if (invocation.source() instanceof Player) {
+            return ((Player) invocation.source()).getUsername();
+        }
+        return "控制台";
+    }
+    
     @Override
     public CompletableFuture<List<String>> suggestAsync(Invocation invocation) {
         String[] args = invocation.arguments();
         
         if (args.length <= 1) {
-            return CompletableFuture.completedFuture(List.of("status", "routes", "bandwidth", "bw", "debug", "reload"));
+            return CompletableFuture.completedFuture(List.of("status", "routes", "bandwidth", "bw", "history", "metrics", "debug", "reload"));
         }
         
-        if ((args[0].equalsIgnoreCase("routes") || args[0].equalsIgnoreCase("bandwidth") || args[0].equalsIgnoreCase("bw")) 
-                && args.length == 2) {
-            return CompletableFuture.completedFuture(
-                    routeManager.getAllServerConfigs().keySet().stream().toList()
-            );
+        if (args.length == 2 && !args[0].equalsIgnoreCase("reload")) {
+            RoutingTable table = routeManager.getRoutingTable();
+            List<String> serverNames = new ArrayList<>(table.getServerCount());
+            for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+                serverNames.add(table.getServer(s).getServerName());
+            }
+            return CompletableFuture.completedFuture(serverNames);
         }
         
         return CompletableFuture.completedFuture(List.of());
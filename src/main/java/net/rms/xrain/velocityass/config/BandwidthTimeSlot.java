@@ -4,17 +4,21 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
-public class BandwidthTimeSlot {
-    private String startTime;
-    private String endTime;
-    private long bandwidth;
-    private int priority;
+/**
+ * 创建后不可修改：编译后的分钟表和当前生效限制的缓存都依赖时间段内容不变，修改时间段需要替换整个调度
+ */
+public final class BandwidthTimeSlot {
+    private final String startTime;
+    private final String endTime;
+    private final long bandwidth;
+    private final int priority;
+    
+    // 解析后的起止时间，无法解析时为 null
+    private final LocalTime start;
+    private final LocalTime end;
     
     public BandwidthTimeSlot(String startTime, String endTime, long bandwidth) {
-        this.startTime = startTime;
-        this.endTime = endTime;
-        this.bandwidth = bandwidth;
-        this.priority = 0;
+        this(startTime, endTime, bandwidth, 0);
     }
     
     public BandwidthTimeSlot(String startTime, String endTime, long bandwidth, int priority) {
@@ -22,40 +26,26 @@ public class BandwidthTimeSlot {
         this.endTime = endTime;
         this.bandwidth = bandwidth;
         this.priority = priority;
+        this.start = parseTime(startTime);
+        this.end = parseTime(getActualEndTime());
     }
     
     public String getStartTime() {
         return startTime;
     }
     
-    public void setStartTime(String startTime) {
-        this.startTime = startTime;
-    }
-    
     public String getEndTime() {
         return endTime;
     }
     
-    public void setEndTime(String endTime) {
-        this.endTime = endTime;
-    }
-    
     public long getBandwidth() {
         return bandwidth;
     }
     
-    public void setBandwidth(long bandwidth) {
-        this.bandwidth = bandwidth;
-    }
-    
     public int getPriority() {
         return priority;
     }
     
-    public void setPriority(int priority) {
-        this.priority = priority;
-    }
-    
     public boolean isNextDay() {
         return endTime != null && endTime.startsWith("ND");
     }
@@ -67,22 +57,29 @@ public class BandwidthTimeSlot {
         return endTime;
     }
     
-    public boolean isTimeInSlot(LocalTime currentTime) {
+    private static LocalTime parseTime(String time) {
+        if (time == null) {
+            return null;
+        }
         try {
-            LocalTime start = LocalTime.parse(startTime);
-            String actualEndTime = getActualEndTime();
-            LocalTime end = LocalTime.parse(actualEndTime);
-            
-            if (isNextDay()) {
-                return (currentTime.isAfter(start) || currentTime.equals(start)) ||
-                       (currentTime.isBefore(end) || currentTime.equals(end));
-            } else {
-                return (currentTime.isAfter(start) || currentTime.equals(start)) &&
-                       (currentTime.isBefore(end) || currentTime.equals(end));
-            }
+            return LocalTime.parse(time);
         } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    public boolean isTimeInSlot(LocalTime currentTime) {
+        LocalTime start = this.start;
+        LocalTime end = this.end;
+        if (start == null || end == null) {
             return false;
         }
+        
+        if (isNextDay()) {
+            return !currentTime.isBefore(start) || !currentTime.isAfter(end);
+        } else {
+            return !currentTime.isBefore(start) && !currentTime.isAfter(end);
+        }
     }
     
     public boolean isValid() {
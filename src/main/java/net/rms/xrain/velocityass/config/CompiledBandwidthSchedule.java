@@ -0,0 +1,75 @@
+package net.rms.xrain.velocityass.config;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 编译后的分时段带宽表：一天按分钟划分为 1440 个格子，每个格子预先算好生效的时间段和带宽限制。
+ * 查询时只需按当前分钟读取数组，不再逐个解析和匹配时间段。
+ */
+final class CompiledBandwidthSchedule {
+    static final int MINUTES_PER_DAY = 24 * 60;
+    private static final short NO_SLOT = -1;
+
+    private final BandwidthTimeSlot[] slots;
+    private final short[] slotByMinute;
+    private final long[] limitByMinute;
+
+    private CompiledBandwidthSchedule(BandwidthTimeSlot[] slots, short[] slotByMinute, long[] limitByMinute) {
+        this.slots = slots;
+        this.slotByMinute = slotByMinute;
+        this.limitByMinute = limitByMinute;
+    }
+
+    /**
+     * 按优先级顺序编译时间段，同一分钟命中多个时间段时取排在前面的那个。
+     * 每个格子以该分钟的第 30 秒判断是否落在时间段内，因此整分钟的起止时间与逐次匹配的结果一致，
+     * 跨天 (ND) 时间段沿用 BandwidthTimeSlot 的判断规则。
+     */
+    static CompiledBandwidthSchedule compile(long defaultBandwidth, List<BandwidthTimeSlot> timeSlots) {
+        BandwidthTimeSlot[] slots = timeSlots.toArray(new BandwidthTimeSlot[0]);
+        short[] slotByMinute = new short[MINUTES_PER_DAY];
+        long[] limitByMinute = new long[MINUTES_PER_DAY];
+        Arrays.fill(slotByMinute, NO_SLOT);
+        Arrays.fill(limitByMinute, defaultBandwidth);
+
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            LocalTime sampleTime = LocalTime.ofSecondOfDay(minute * 60L + 30);
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i].isTimeInSlot(sampleTime)) {
+                    slotByMinute[minute] = (short) i;
+                    limitByMinute[minute] = slots[i].getBandwidth();
+                    break;
+                }
+            }
+        }
+        return new CompiledBandwidthSchedule(slots, slotByMinute, limitByMinute);
+    }
+
+    static int minuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    long getLimit(int minuteOfDay) {
+        return limitByMinute[minuteOfDay];
+    }
+
+    BandwidthTimeSlot getSlot(int minuteOfDay) {
+        short index = slotByMinute[minuteOfDay];
+        return index == NO_SLOT ? null : slots[index];
+    }
+
+    /**
+     * 从指定分钟开始，到生效时间段发生变化还有多少分钟；全天不变时返回 MINUTES_PER_DAY
+     */
+    int minutesUntilTransition(int minuteOfDay) {
+        short slot = slotByMinute[minuteOfDay];
+        for (int offset = 1; offset < MINUTES_PER_DAY; offset++) {
+            if (slotByMinute[(minuteOfDay + offset) % MINUTES_PER_DAY] != slot) {
+                return offset;
+            }
+        }
+        return MINUTES_PER_DAY;
+    }
+}
@@ -0,0 +1,66 @@
+package net.rms.xrain.velocityass.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次配置重载相对于重载前配置的结构差异，路由以 "服务器 -> 地址" 表示
+ */
+public final class ConfigDiff {
+    private final List<String> addedRoutes = new ArrayList<>();
+    private final List<String> removedRoutes = new ArrayList<>();
+    private final List<String> changedRoutes = new ArrayList<>();
+    private final List<String> changedServers = new ArrayList<>();
+
+    ConfigDiff() {
+    }
+
+    void routeAdded(String serverName, String address) {
+        addedRoutes.add(serverName + " -> " + address);
+    }
+
+    void routeRemoved(String serverName, String address) {
+        removedRoutes.add(serverName + " -> " + address);
+    }
+
+    void routeChanged(String serverName, String address) {
+        changedRoutes.add(serverName + " -> " + address);
+    }
+
+    void serverChanged(String serverName) {
+        changedServers.add(serverName);
+    }
+
+    public List<String> getAddedRoutes() {
+        return Collections.unmodifiableList(addedRoutes);
+    }
+
+    public List<String> getRemovedRoutes() {
+        return Collections.unmodifiableList(removedRoutes);
+    }
+
+    public List<String> getChangedRoutes() {
+        return Collections.unmodifiableList(changedRoutes);
+    }
+
+    /**
+     * 服务器级别设置（auto-sort、检测间隔、检测方式、选路策略）发生变化的服务器
+     */
+    public List<String> getChangedServers() {
+        return Collections.unmodifiableList(changedServers);
+    }
+
+    public boolean isEmpty() {
+        return addedRoutes.isEmpty() && removedRoutes.isEmpty() && changedRoutes.isEmpty() && changedServers.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "无变化";
+        }
+        return String.format("新增路由 %d, 移除路由 %d, 修改路由 %d, 修改服务器设置 %d",
+                addedRoutes.size(), removedRoutes.size(), changedRoutes.size(), changedServers.size());
+    }
+}
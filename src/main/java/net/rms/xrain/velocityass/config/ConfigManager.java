@@ -8,24 +8,31 @@ import org.yaml.snakeyaml.Yaml;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
 public class ConfigManager {
     private final Path dataDirectory;
     private final Path configFile;
     private final Logger logger;
-    private final Map<String, ServerConfig> serverConfigs;
+    // 每次加载都构建新的快照后整体替换，读取方不会看到重建到一半的配置
+    private volatile ConfigSnapshot snapshot;
     private final ProxyServer proxyServer;
+    private long configChecksum;
     
     public ConfigManager(Path dataDirectory, Logger logger, ProxyServer proxyServer) {
         this.dataDirectory = dataDirectory;
         this.configFile = dataDirectory.resolve("config.yml");
         this.logger = logger;
-        this.serverConfigs = new ConcurrentHashMap<>();
+        this.snapshot = ConfigSnapshot.empty();
         this.proxyServer = proxyServer;
+        this.configChecksum = -1;
     }
     
     public void loadConfig() throws IOException {
@@ -37,17 +44,106 @@ public class ConfigManager {
             createDefaultConfig();
         }
         
-        try (InputStream inputStream = Files.newInputStream(configFile)) {
+        load(true);
+        logger.info("配置文件加载成功，共加载 {} 个服务器配置", snapshot.size());
+    }
+    
+    /**
+     * 解析配置文件并与当前配置合并后整体替换。force 为 false 且文件内容与上次加载时相同时不做任何事并返回 null。
+     * 解析失败时保留当前配置不变：全局设置先解析到局部变量，路由配置的变化先记录下来，全部成功后才随新快照一起发布
+     */
+    private synchronized ConfigDiff load(boolean force) throws IOException {
+        try {
+            byte[] content = Files.readAllBytes(configFile);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            long checksum = crc.getValue();
+            if (!force && checksum == configChecksum) {
+                return null;
+            }
+            
             Yaml yaml = new Yaml();
-            Map<String, Object> config = yaml.load(inputStream);
-            parseConfig(config);
-            logger.info("配置文件加载成功，共加载 {} 个服务器配置", serverConfigs.size());
+            Map<String, Object> config = yaml.load(new ByteArrayInputStream(content));
+            Object autoReloadObj = config.get("auto-reload");
+            boolean autoReload = !(autoReloadObj instanceof Boolean) || (Boolean) autoReloadObj;
+            MetricsSettings metrics = parseMetricsConfig(config.get("metrics"));
+            Map<String, ServerConfig> parsed = parseConfig(config);
+            
+            Map<RouteInfo, RouteSettings> changedSettings = new IdentityHashMap<>();
+            ConfigDiff diff = merge(snapshot.getServerConfigs(), parsed, changedSettings);
+            for (ServerConfig serverConfig : parsed.values()) {
+                serverConfig.setRoutes(Collections.unmodifiableList(new ArrayList<>(serverConfig.getRoutes())));
+            }
+            
+            // 到这里已不会再失败，沿用的路由各自一次 volatile 写入换上新配置，然后发布新快照
+            changedSettings.forEach(RouteInfo::applySettings);
+            snapshot = snapshot.next(parsed, autoReload, metrics.enabled, metrics.host, metrics.port);
+            configChecksum = checksum;
+            return diff;
         } catch (Exception e) {
             logger.error("加载配置文件失败: ", e);
             throw new IOException("Failed to load config", e);
         }
     }
     
+    /**
+     * 将新解析的配置与当前配置按服务器名和路由地址对比。地址相同的路由沿用原有的 RouteInfo 对象，
+     * 玩家分配、带宽统计、延迟统计、探测调度和历史记录都随对象保留；配置项有变化的只记录到 changedSettings，
+     * 不修改正在使用的路由
+     */
+    private ConfigDiff merge(Map<String, ServerConfig> current, Map<String, ServerConfig> parsed,
+                             Map<RouteInfo, RouteSettings> changedSettings) {
+        ConfigDiff diff = new ConfigDiff();
+        for (ServerConfig parsedConfig : parsed.values()) {
+            String serverName = parsedConfig.getServerName();
+            ServerConfig currentConfig = current.get(serverName);
+            if (currentConfig == null) {
+                for (RouteInfo route : parsedConfig.getRoutes()) {
+                    diff.routeAdded(serverName, route.getAddress());
+                }
+                continue;
+            }
+            
+            if (!currentConfig.hasSameSettings(parsedConfig)) {
+                diff.serverChanged(serverName);
+            }
+            
+            Map<String, RouteInfo> currentRoutes = new LinkedHashMap<>();
+            for (RouteInfo route : currentConfig.getRoutes()) {
+                currentRoutes.putIfAbsent(route.getAddress(), route);
+            }
+            
+            List<RouteInfo> routes = new ArrayList<>(parsedConfig.getRoutes().size());
+            for (RouteInfo parsedRoute : parsedConfig.getRoutes()) {
+                RouteInfo existing = currentRoutes.remove(parsedRoute.getAddress());
+                if (existing == null) {
+                    diff.routeAdded(serverName, parsedRoute.getAddress());
+                    routes.add(parsedRoute);
+                    continue;
+                }
+                if (!existing.getSettings().isSame(parsedRoute.getSettings())) {
+                    changedSettings.put(existing, parsedRoute.getSettings());
+                    diff.routeChanged(serverName, parsedRoute.getAddress());
+                }
+                routes.add(existing);
+            }
+            parsedConfig.setRoutes(routes);
+            
+            for (RouteInfo removed : currentRoutes.values()) {
+                diff.routeRemoved(serverName, removed.getAddress());
+            }
+        }
+        
+        for (ServerConfig currentConfig : current.values()) {
+            if (!parsed.containsKey(currentConfig.getServerName())) {
+                for (RouteInfo route : currentConfig.getRoutes()) {
+                    diff.routeRemoved(currentConfig.getServerName(), route.getAddress());
+                }
+            }
+        }
+        return diff;
+    }
+    
     private void createDefaultConfig() throws IOException {
         StringBuilder configBuilder = new StringBuilder();
         configBuilder.append("# VelocityASS 多线路服务器配置\n");
@@ -59,6 +155,7 @@ public class ConfigManager {
         configBuilder.append("#       - address: \"服务器地址:端口\"\n");
         configBuilder.append("#         priority: 优先级数字(越小越优先)\n");
         configBuilder.append("#         enabled: true/false\n");
+        configBuilder.append("#         weight: 1 (可选，weighted-random 和 consistent-hash 策略使用的权重)\n");
         configBuilder.append("#         max-bandwidth: 1048576 (固定带宽限制，字节/秒，-1表示无限制)\n");
         configBuilder.append("#         use-scheduled-bandwidth: true/false (是否使用分时段带宽，默认false)\n");
         configBuilder.append("#         bandwidth-schedule: (可选，分时段带宽限制配置)\n");
@@ -73,7 +170,18 @@ public class ConfigManager {
         configBuilder.append("#               bandwidth: 512000   # 夜间低带宽\n");
         configBuilder.append("#     auto-sort: true/false (是否根据延迟自动排序)\n");
         configBuilder.append("#     ping-interval: 30 (ping检测间隔，秒)\n");
-        configBuilder.append("#     ping-timeout: 5000 (ping超时时间，毫秒)\n\n");
+        configBuilder.append("#     ping-timeout: 5000 (ping超时时间，毫秒)\n");
+        configBuilder.append("#     ping-mode: tcp/status (tcp仅检测连接，status发送Minecraft状态请求测量真实延迟)\n");
+        configBuilder.append("#     route-strategy: 玩家选路策略 (可选，默认priority)\n");
+        configBuilder.append("#       priority / lowest-latency / least-utilization / least-connections / weighted-random / p2c / consistent-hash\n");
+        configBuilder.append("#\n");
+        configBuilder.append("# auto-reload: true (修改并保存本文件后自动重新加载，只应用有变化的路由，默认开启；\n");
+        configBuilder.append("#   改为 false 保存后立即停止自动重新加载，改回 true 需要执行一次 /vass reload，不需要重启)\n");
+        configBuilder.append("#\n");
+        configBuilder.append("# metrics: Prometheus 指标接口 (可选，修改后需要重启代理)\n");
+        configBuilder.append("#   enabled: false\n");
+        configBuilder.append("#   host: \"127.0.0.1\"\n");
+        configBuilder.append("#   port: 9225  # 访问 http://host:port/metrics\n\n");
         configBuilder.append("servers:\n");
         
         boolean hasServers = false;
@@ -147,13 +255,12 @@ public class ConfigManager {
     }
     
     @SuppressWarnings("unchecked")
-    private void parseConfig(Map<String, Object> config) {
-        serverConfigs.clear();
-        
+    private Map<String, ServerConfig> parseConfig(Map<String, Object> config) {
+        Map<String, ServerConfig> serverConfigs = new HashMap<>();
         Map<String, Object> servers = (Map<String, Object>) config.get("servers");
         if (servers == null) {
             logger.warn("配置文件中未找到 servers 节点");
-            return;
+            return serverConfigs;
         }
         
         for (Map.Entry<String, Object> entry : servers.entrySet()) {
@@ -171,34 +278,37 @@ public class ConfigManager {
                     Object maxBandwidthObj = routeData.get("max-bandwidth");
                     
                     if (address != null && priority != null && enabled != null) {
-                        RouteInfo route = new RouteInfo(address, priority, enabled);
+                        int weight = 1;
+                        Object weightObj = routeData.get("weight");
+                        if (weightObj instanceof Number) {
+                            weight = ((Number) weightObj).intValue();
+                        } else if (weightObj != null) {
+                            logger.warn("路由 {} 的 weight 配置无效: {}, 使用默认值 1", address, weightObj);
+                        }
                         
+                        long maxBandwidth = -1;
                         if (maxBandwidthObj != null) {
                             try {
-                                long maxBandwidth = maxBandwidthObj instanceof Number ? 
+                                maxBandwidth = maxBandwidthObj instanceof Number ? 
                                     ((Number) maxBandwidthObj).longValue() : 
                                     Long.parseLong(maxBandwidthObj.toString());
-                                route.setMaxBandwidth(maxBandwidth);
                             } catch (NumberFormatException e) {
                                 logger.warn("路由 {} 的带宽限制配置无效: {}, 使用默认值 -1", 
                                         address, maxBandwidthObj);
-                                route.setMaxBandwidth(-1);
                             }
                         }
                         
                         // 解析带宽模式开关
-                        Boolean useScheduledBandwidth = (Boolean) routeData.get("use-scheduled-bandwidth");
-                        if (useScheduledBandwidth != null) {
-                            route.setUseScheduledBandwidth(useScheduledBandwidth);
-                        }
+                        Boolean useScheduledBandwidthObj = (Boolean) routeData.get("use-scheduled-bandwidth");
+                        boolean useScheduledBandwidth = useScheduledBandwidthObj != null && useScheduledBandwidthObj;
                         
                         // 解析分时段带宽调度
+                        TimeBasedBandwidthSchedule schedule = null;
                         Object bandwidthScheduleObj = routeData.get("bandwidth-schedule");
                         if (bandwidthScheduleObj instanceof Map) {
-                            TimeBasedBandwidthSchedule schedule = parseBandwidthSchedule((Map<String, Object>) bandwidthScheduleObj, address);
+                            schedule = parseBandwidthSchedule((Map<String, Object>) bandwidthScheduleObj, address);
                             if (schedule != null) {
-                                route.setBandwidthSchedule(schedule);
-                                if (route.isUseScheduledBandwidth()) {
+                                if (useScheduledBandwidth) {
                                     logger.info("路由 {} 启用分时段带宽调度: {}", address, schedule.getScheduleInfo());
                                 } else {
                                     logger.info("路由 {} 配置了分时段带宽调度但未启用: {}", address, schedule.getScheduleInfo());
@@ -206,7 +316,8 @@ public class ConfigManager {
                             }
                         }
                         
-                        serverConfig.addRoute(route);
+                        serverConfig.addRoute(new RouteInfo(address,
+                                new RouteSettings(priority, weight, enabled, maxBandwidth, schedule, useScheduledBandwidth)));
                     }
                 }
             }
@@ -226,22 +337,126 @@ public class ConfigManager {
                 serverConfig.setPingTimeout(pingTimeout);
             }
             
+            Object pingModeObj = serverData.get("ping-mode");
+            if (pingModeObj != null) {
+                ProbeMode probeMode = ProbeMode.fromString(pingModeObj.toString());
+                if (probeMode != null) {
+                    serverConfig.setProbeMode(probeMode);
+                } else {
+                    logger.warn("服务器 {} 的 ping-mode 配置无效: {}, 使用默认值 tcp", serverName, pingModeObj);
+                }
+            }
+            
+            Object routeStrategyObj = serverData.get("route-strategy");
+            if (routeStrategyObj != null) {
+                RouteStrategyType routeStrategy = RouteStrategyType.fromString(routeStrategyObj.toString());
+                if (routeStrategy != null) {
+                    serverConfig.setRouteStrategy(routeStrategy);
+                } else {
+                    logger.warn("服务器 {} 的 route-strategy 配置无效: {}, 使用默认值 priority", serverName, routeStrategyObj);
+                }
+            }
+            
             serverConfigs.put(serverName, serverConfig);
             logger.info("加载服务器配置: {}", serverConfig);
         }
+        return serverConfigs;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private MetricsSettings parseMetricsConfig(Object metricsObj) {
+        if (!(metricsObj instanceof Map)) {
+            return new MetricsSettings(false, ConfigSnapshot.DEFAULT_METRICS_HOST, ConfigSnapshot.DEFAULT_METRICS_PORT);
+        }
+        
+        Map<String, Object> metrics = (Map<String, Object>) metricsObj;
+        Object enabledObj = metrics.get("enabled");
+        boolean enabled = enabledObj instanceof Boolean && (Boolean) enabledObj;
+        
+        Object hostObj = metrics.get("host");
+        String host = hostObj != null ? hostObj.toString() : ConfigSnapshot.DEFAULT_METRICS_HOST;
+        
+        int port = ConfigSnapshot.DEFAULT_METRICS_PORT;
+        Object portObj = metrics.get("port");
+        if (portObj instanceof Number) {
+            int value = ((Number) portObj).intValue();
+            if (value > 0 && value <= 65535) {
+                port = value;
+            } else {
+                logger.warn("metrics.port 配置无效: {}, 使用默认值 {}", portObj, port);
+            }
+        }
+        return new MetricsSettings(enabled, host, port);
+    }
+    
+    private static final class MetricsSettings {
+        final boolean enabled;
+        final String host;
+        final int port;
+        
+        MetricsSettings(boolean enabled, String host, int port) {
+            this.enabled = enabled;
+            this.host = host;
+            this.port = port;
+        }
     }
     
     public ServerConfig getServerConfig(String serverName) {
-        return serverConfigs.get(serverName);
+        return snapshot.getServerConfig(serverName);
     }
     
+    /**
+     * 当前配置的只读视图，不会复制；需要在一次操作中多次遍历时使用 getSnapshot() 固定版本
+     */
     public Map<String, ServerConfig> getAllServerConfigs() {
-        return new HashMap<>(serverConfigs);
+        return snapshot.getServerConfigs();
+    }
+    
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
     }
     
-    public void reloadConfig() throws IOException {
-        loadConfig();
-        logger.info("配置文件已重新加载");
+    /**
+     * 是否监视配置文件并在修改后自动重新加载
+     */
+    public boolean isAutoReload() {
+        return snapshot.isAutoReload();
+    }
+    
+    public Path getConfigFile() {
+        return configFile;
+    }
+    
+    public boolean isMetricsEnabled() {
+        return snapshot.isMetricsEnabled();
+    }
+    
+    public String getMetricsHost() {
+        return snapshot.getMetricsHost();
+    }
+    
+    public int getMetricsPort() {
+        return snapshot.getMetricsPort();
+    }
+    
+    public ConfigDiff reloadConfig() throws IOException {
+        if (!Files.exists(configFile)) {
+            createDefaultConfig();
+        }
+        ConfigDiff diff = load(true);
+        logger.info("配置文件已重新加载: {}", diff);
+        return diff;
+    }
+    
+    /**
+     * 文件内容与上次加载时相同（例如只更新了修改时间）时返回 null
+     */
+    public ConfigDiff reloadConfigIfChanged() throws IOException {
+        ConfigDiff diff = load(false);
+        if (diff != null) {
+            logger.info("配置文件已重新加载: {}", diff);
+        }
+        return diff;
     }
     
     @SuppressWarnings("unchecked")
@@ -274,7 +489,11 @@ public class ConfigManager {
                 }
             }
             
-            return schedule.isEmpty() ? null : schedule;
+            if (schedule.isEmpty()) {
+                return null;
+            }
+            schedule.compile();
+            return schedule;
             
         } catch (Exception e) {
             logger.error("解析带宽调度配置时发生错误", e);
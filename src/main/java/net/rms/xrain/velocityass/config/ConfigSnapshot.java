@@ -0,0 +1,88 @@
+package net.rms.xrain.velocityass.config;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 某一次加载后的服务器配置和全局设置的不可变快照，每次加载成功版本号加一。
+ * ConfigManager 通过一个 volatile 引用发布快照，读取方直接使用其中的映射，不需要复制；
+ * 同一次操作中需要多次遍历配置时应先取一次快照，保证看到的是同一个版本。
+ */
+public final class ConfigSnapshot {
+    static final String DEFAULT_METRICS_HOST = "127.0.0.1";
+    static final int DEFAULT_METRICS_PORT = 9225;
+
+    private static final ConfigSnapshot EMPTY = new ConfigSnapshot(0, Collections.emptyMap(),
+            true, false, DEFAULT_METRICS_HOST, DEFAULT_METRICS_PORT);
+
+    private final long version;
+    private final Map<String, ServerConfig> servers;
+    private final boolean autoReload;
+    private final boolean metricsEnabled;
+    private final String metricsHost;
+    private final int metricsPort;
+
+    private ConfigSnapshot(long version, Map<String, ServerConfig> servers, boolean autoReload,
+                           boolean metricsEnabled, String metricsHost, int metricsPort) {
+        this.version = version;
+        this.servers = servers;
+        this.autoReload = autoReload;
+        this.metricsEnabled = metricsEnabled;
+        this.metricsHost = metricsHost;
+        this.metricsPort = metricsPort;
+    }
+
+    static ConfigSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 基于当前快照生成下一个版本
+     */
+    ConfigSnapshot next(Map<String, ServerConfig> servers, boolean autoReload,
+                        boolean metricsEnabled, String metricsHost, int metricsPort) {
+        return new ConfigSnapshot(version + 1, Collections.unmodifiableMap(new HashMap<>(servers)),
+                autoReload, metricsEnabled, metricsHost, metricsPort);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public ServerConfig getServerConfig(String serverName) {
+        return servers.get(serverName);
+    }
+
+    /**
+     * 只读视图，不会复制
+     */
+    public Map<String, ServerConfig> getServerConfigs() {
+        return servers;
+    }
+
+    public Collection<ServerConfig> getServers() {
+        return servers.values();
+    }
+
+    public int size() {
+        return servers.size();
+    }
+
+    public boolean isAutoReload() {
+        return autoReload;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public String getMetricsHost() {
+        return metricsHost;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+}
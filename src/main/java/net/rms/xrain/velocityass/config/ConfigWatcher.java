@@ -0,0 +1,109 @@
+package net.rms.xrain.velocityass.config;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过 WatchService 监视配置文件，文件被修改或替换后在监视线程上回调。
+ * 编辑器保存时经常连续产生多个事件（截断、写入、重命名），等事件停止 DEBOUNCE_MILLIS 后才回调一次。
+ */
+public class ConfigWatcher {
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Path configFile;
+    private final Logger logger;
+    private final Runnable onChange;
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean running;
+
+    public ConfigWatcher(Path configFile, Logger logger, Runnable onChange) {
+        this.configFile = configFile.toAbsolutePath();
+        this.logger = logger;
+        this.onChange = onChange;
+    }
+
+    public void start() throws IOException {
+        watchService = configFile.getFileSystem().newWatchService();
+        configFile.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        running = true;
+        thread = new Thread(this::run, "VelocityASS-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("已开始监视配置文件变化: {}", configFile);
+    }
+
+    public void stop() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("关闭配置文件监视失败: {}", e.getMessage());
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                WatchKey key = watchService.take();
+                boolean changed = isConfigEvent(key);
+                if (!key.reset()) {
+                    logger.warn("配置目录已不可访问，停止监视配置文件: {}", configFile.getParent());
+                    return;
+                }
+                if (changed) {
+                    awaitQuiet();
+                    notifyChange();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stop() 关闭监视
+        }
+    }
+
+    private boolean isConfigEvent(WatchKey key) {
+        Path fileName = configFile.getFileName();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 丢弃 DEBOUNCE_MILLIS 内连续到达的事件，直到目录安静下来
+     */
+    private void awaitQuiet() throws InterruptedException {
+        WatchKey key;
+        while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private void notifyChange() {
+        try {
+            onChange.run();
+        } catch (RuntimeException e) {
+            logger.error("处理配置文件变化时发生错误", e);
+        }
+    }
+}
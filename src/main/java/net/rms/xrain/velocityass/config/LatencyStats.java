@@ -0,0 +1,141 @@
+package net.rms.xrain.velocityass.config;
+
+import java.util.Arrays;
+
+/**
+ * 路由延迟统计：固定大小的环形采样窗口，记录时计算 EWMA、抖动和 p50/p95，读取时不做任何计算。
+ * 采样数组在构造时预分配，记录过程中不产生新对象。
+ */
+public class LatencyStats {
+    public static final int WINDOW_SIZE = 32;
+    private static final double EWMA_ALPHA = 0.2;
+    private static final double JITTER_GAIN = 1.0 / 16.0;
+
+    private final long[] samples;
+    private final long[] sortBuffer;
+    private int nextIndex;
+    private int sampleCount;
+    private long previousSample;
+
+    private volatile double ewmaMillis;
+    private volatile double jitterMillis;
+    private volatile double p50Millis;
+    private volatile double p95Millis;
+
+    public LatencyStats() {
+        this.samples = new long[WINDOW_SIZE];
+        this.sortBuffer = new long[WINDOW_SIZE];
+        reset();
+    }
+
+    public synchronized void record(long rttNanos) {
+        if (rttNanos <= 0) {
+            return;
+        }
+
+        double sampleMillis = rttNanos / 1_000_000.0;
+        if (sampleCount == 0) {
+            ewmaMillis = sampleMillis;
+            jitterMillis = 0.0;
+        } else {
+            ewmaMillis = ewmaMillis + EWMA_ALPHA * (sampleMillis - ewmaMillis);
+            // RFC 3550 风格的到达间隔抖动估计
+            double delta = Math.abs(rttNanos - previousSample) / 1_000_000.0;
+            jitterMillis = jitterMillis + JITTER_GAIN * (delta - jitterMillis);
+        }
+        previousSample = rttNanos;
+
+        samples[nextIndex] = rttNanos;
+        nextIndex = (nextIndex + 1) % WINDOW_SIZE;
+        if (sampleCount < WINDOW_SIZE) {
+            sampleCount++;
+        }
+
+        System.arraycopy(samples, 0, sortBuffer, 0, sampleCount);
+        Arrays.sort(sortBuffer, 0, sampleCount);
+        p50Millis = percentile(0.50);
+        p95Millis = percentile(0.95);
+    }
+
+    public synchronized void reset() {
+        nextIndex = 0;
+        sampleCount = 0;
+        previousSample = 0;
+        ewmaMillis = -1;
+        jitterMillis = -1;
+        p50Millis = -1;
+        p95Millis = -1;
+    }
+
+    /**
+     * 按从旧到新的顺序复制窗口内的采样 (纳秒)，返回采样数，out 长度至少为 WINDOW_SIZE
+     */
+    public synchronized int copySamples(long[] out) {
+        int start = Math.floorMod(nextIndex - sampleCount, WINDOW_SIZE);
+        for (int i = 0; i < sampleCount; i++) {
+            out[i] = samples[(start + i) % WINDOW_SIZE];
+        }
+        return sampleCount;
+    }
+
+    /**
+     * 用持久化的采样 (从旧到新) 和平滑值恢复统计，例如代理重启后的预热
+     */
+    public synchronized void restore(long[] restored, int count, double ewma, double jitter) {
+        reset();
+        int offset = Math.max(0, count - WINDOW_SIZE);
+        sampleCount = count - offset;
+        if (sampleCount <= 0) {
+            sampleCount = 0;
+            return;
+        }
+        System.arraycopy(restored, offset, samples, 0, sampleCount);
+        nextIndex = sampleCount % WINDOW_SIZE;
+        previousSample = samples[sampleCount - 1];
+        ewmaMillis = ewma > 0 ? ewma : samples[sampleCount - 1] / 1_000_000.0;
+        jitterMillis = Math.max(0.0, jitter);
+
+        System.arraycopy(samples, 0, sortBuffer, 0, sampleCount);
+        Arrays.sort(sortBuffer, 0, sampleCount);
+        p50Millis = percentile(0.50);
+        p95Millis = percentile(0.95);
+    }
+
+    private double percentile(double quantile) {
+        int rank = (int) Math.ceil(quantile * sampleCount) - 1;
+        return sortBuffer[Math.max(0, Math.min(rank, sampleCount - 1))] / 1_000_000.0;
+    }
+
+    public boolean hasSamples() {
+        return ewmaMillis >= 0;
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    public double getEwmaMillis() {
+        return ewmaMillis;
+    }
+
+    public double getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP95Millis() {
+        return p95Millis;
+    }
+
+    @Override
+    public String toString() {
+        if (!hasSamples()) {
+            return "LatencyStats{无数据}";
+        }
+        return String.format("LatencyStats{ewma=%.2fms, jitter=%.2fms, p50=%.2fms, p95=%.2fms, samples=%d}",
+                ewmaMillis, jitterMillis, p50Millis, p95Millis, getSampleCount());
+    }
+}
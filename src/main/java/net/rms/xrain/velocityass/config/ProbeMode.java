@@ -0,0 +1,24 @@
+package net.rms.xrain.velocityass.config;
+
+public enum ProbeMode {
+    /**
+     * 仅检测 TCP 连接是否建立，开销最低
+     */
+    TCP,
+    /**
+     * 发送 Minecraft 握手、状态请求和 ping/pong，测量应用层往返时间并读取在线人数
+     */
+    STATUS;
+    
+    public static ProbeMode fromString(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (ProbeMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value.trim())) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
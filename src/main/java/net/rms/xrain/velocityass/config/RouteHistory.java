@@ -0,0 +1,297 @@
+package net.rms.xrain.velocityass.config;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * 路由历史记录：带宽使用、带宽上限、玩家数和延迟的时间序列，分两个精度层级保存在预分配的环形数组中。
+ * 细粒度层每 5 秒一个点，保留 1 小时；粗粒度层每分钟一个点，保留 24 小时。
+ * 每个槽位按时间桶编号直接定位 (bucket % capacity)，同一个桶内的多次采样取平均，
+ * 没有采样的桶保留旧的桶编号，读取时自动跳过。记录和读取都不产生新对象。
+ * 另外按本地时间的每天分钟 (与分时段带宽表对齐) 维护一份跨天学习的带宽曲线，用于预测未来几分钟的负载。
+ */
+public class RouteHistory {
+
+    public enum Metric {
+        USAGE("带宽"),
+        LIMIT("上限"),
+        PLAYERS("玩家"),
+        LATENCY("延迟");
+
+        private final String displayName;
+
+        Metric(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    public enum Resolution {
+        FINE(5, 720),
+        COARSE(60, 1440);
+
+        private final int stepSeconds;
+        private final int capacity;
+
+        Resolution(int stepSeconds, int capacity) {
+            this.stepSeconds = stepSeconds;
+            this.capacity = capacity;
+        }
+
+        public int getStepSeconds() {
+            return stepSeconds;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getSpanSeconds() {
+            return (long) stepSeconds * capacity;
+        }
+    }
+
+    // 按时段学习的带宽曲线长度，每天每分钟一个点
+    public static final int PROFILE_LENGTH = CompiledBandwidthSchedule.MINUTES_PER_DAY;
+
+    private static final char[] SPARK_CHARS = {'▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+    private static final Metric[] METRICS = Metric.values();
+    private static final float PROFILE_ALPHA = 0.3f;
+    private static final int PROFILE_SMOOTHING_MINUTES = 2;
+
+    private final Tier fine;
+    private final Tier coarse;
+    // 每天各分钟的平均带宽，跨天做指数平滑，NaN 表示该分钟尚未学习
+    private final float[] dailyProfile;
+    private long lastCoarseBucket;
+
+    public RouteHistory() {
+        this.fine = new Tier(Resolution.FINE);
+        this.coarse = new Tier(Resolution.COARSE);
+        this.dailyProfile = new float[PROFILE_LENGTH];
+        Arrays.fill(dailyProfile, Float.NaN);
+        this.lastCoarseBucket = -1;
+    }
+
+    /**
+     * 记录一个采样点，没有数据的指标传入 Float.NaN
+     */
+    public synchronized void record(long timeMillis, float usage, float limit, float players, float latency) {
+        long epochSeconds = Math.floorDiv(timeMillis, 1000L);
+        fine.record(epochSeconds, usage, limit, players, latency);
+        coarse.record(epochSeconds, usage, limit, players, latency);
+
+        long coarseBucket = Math.floorDiv(epochSeconds, coarse.stepSeconds);
+        if (coarseBucket > lastCoarseBucket) {
+            if (lastCoarseBucket >= 0) {
+                learnProfile(lastCoarseBucket);
+            }
+            lastCoarseBucket = coarseBucket;
+        }
+    }
+
+    /**
+     * 一分钟结束后，将该分钟的平均带宽计入对应的每天分钟曲线
+     */
+    private void learnProfile(long minuteBucket) {
+        int slot = coarse.slot(minuteBucket);
+        if (coarse.buckets[slot] != minuteBucket) {
+            return;
+        }
+        float usage = coarse.values[Metric.USAGE.ordinal()][slot];
+        if (Float.isNaN(usage)) {
+            return;
+        }
+        int minute = localMinuteOfDay(minuteBucket * 60);
+        float learned = dailyProfile[minute];
+        dailyProfile[minute] = Float.isNaN(learned) ? usage : learned + PROFILE_ALPHA * (usage - learned);
+    }
+
+    private static int localMinuteOfDay(long epochSeconds) {
+        int offset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochSecond(epochSeconds)).getTotalSeconds();
+        return (int) Math.floorMod(Math.floorDiv(epochSeconds + offset, 60L), (long) CompiledBandwidthSchedule.MINUTES_PER_DAY);
+    }
+
+    /**
+     * 学习到的某个本地时间分钟的典型带宽 (字节/秒)，取前后几分钟的平均值，没有数据时返回 NaN
+     */
+    public synchronized float getProfileUsage(int minuteOfDay) {
+        float sum = 0f;
+        int count = 0;
+        for (int offset = -PROFILE_SMOOTHING_MINUTES; offset <= PROFILE_SMOOTHING_MINUTES; offset++) {
+            float value = dailyProfile[Math.floorMod(minuteOfDay + offset, CompiledBandwidthSchedule.MINUTES_PER_DAY)];
+            if (!Float.isNaN(value)) {
+                sum += value;
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : Float.NaN;
+    }
+
+    /**
+     * 复制按时段学习到的带宽曲线，尚未学习的分钟为 NaN，out 长度至少为 PROFILE_LENGTH
+     */
+    public synchronized void copyProfile(float[] out) {
+        System.arraycopy(dailyProfile, 0, out, 0, dailyProfile.length);
+    }
+
+    /**
+     * 用持久化的带宽曲线覆盖当前曲线，例如代理重启后的预热
+     */
+    public synchronized void restoreProfile(float[] profile) {
+        System.arraycopy(profile, 0, dailyProfile, 0, dailyProfile.length);
+    }
+
+    /**
+     * 最近 windowSeconds 秒内是否有记录，只检查最新的时间桶，不遍历数据
+     */
+    public synchronized boolean hasData(Resolution resolution, long nowMillis, long windowSeconds) {
+        Tier tier = tier(resolution);
+        long newest = Math.floorDiv(Math.floorDiv(nowMillis, 1000L), tier.stepSeconds);
+        int points = (int) Math.min(tier.capacity, Math.max(1, windowSeconds / tier.stepSeconds));
+        return tier.latestBucket > newest - points;
+    }
+
+    /**
+     * 统计最近 windowSeconds 秒内某个指标的最小值、平均值和最大值，结果写入 out (长度至少为 4)：
+     * out[0] = 最小值, out[1] = 平均值, out[2] = 最大值, out[3] = 有效点数
+     */
+    public synchronized void summarize(Resolution resolution, Metric metric, long nowMillis, long windowSeconds, double[] out) {
+        Tier tier = tier(resolution);
+        float[] values = tier.values[metric.ordinal()];
+        long newest = Math.floorDiv(Math.floorDiv(nowMillis, 1000L), tier.stepSeconds);
+        int points = (int) Math.min(tier.capacity, Math.max(1, windowSeconds / tier.stepSeconds));
+
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0.0;
+        int count = 0;
+        for (long bucket = newest - points + 1; bucket <= newest; bucket++) {
+            int slot = tier.slot(bucket);
+            if (tier.buckets[slot] != bucket) {
+                continue;
+            }
+            float value = values[slot];
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+
+        out[0] = count > 0 ? min : Double.NaN;
+        out[1] = count > 0 ? sum / count : Double.NaN;
+        out[2] = count > 0 ? max : Double.NaN;
+        out[3] = count;
+    }
+
+    /**
+     * 将最近 windowSeconds 秒的数据按 width 列追加为迷你走势图，每列取该列时间范围内的平均值，
+     * 没有数据的列输出空格。返回实际包含数据的列数
+     */
+    public synchronized int appendSparkline(StringBuilder sb, Resolution resolution, Metric metric,
+                                            long nowMillis, long windowSeconds, int width) {
+        Tier tier = tier(resolution);
+        float[] values = tier.values[metric.ordinal()];
+        long newest = Math.floorDiv(Math.floorDiv(nowMillis, 1000L), tier.stepSeconds);
+        int points = (int) Math.min(tier.capacity, Math.max(1, windowSeconds / tier.stepSeconds));
+        width = Math.max(1, Math.min(width, points));
+        long oldest = newest - points + 1;
+
+        // 第一遍求最大最小值用于归一化
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (long bucket = oldest; bucket <= newest; bucket++) {
+            int slot = tier.slot(bucket);
+            if (tier.buckets[slot] == bucket && !Float.isNaN(values[slot])) {
+                min = Math.min(min, values[slot]);
+                max = Math.max(max, values[slot]);
+            }
+        }
+
+        int filled = 0;
+        for (int column = 0; column < width; column++) {
+            long from = oldest + (long) column * points / width;
+            long to = oldest + (long) (column + 1) * points / width;
+            double sum = 0.0;
+            int count = 0;
+            for (long bucket = from; bucket < to; bucket++) {
+                int slot = tier.slot(bucket);
+                if (tier.buckets[slot] == bucket && !Float.isNaN(values[slot])) {
+                    sum += values[slot];
+                    count++;
+                }
+            }
+            if (count == 0) {
+                sb.append(' ');
+                continue;
+            }
+            double average = sum / count;
+            int level = max > min
+                    ? (int) Math.round((average - min) / (max - min) * (SPARK_CHARS.length - 1)) : 0;
+            sb.append(SPARK_CHARS[level]);
+            filled++;
+        }
+        return filled;
+    }
+
+    private Tier tier(Resolution resolution) {
+        return resolution == Resolution.FINE ? fine : coarse;
+    }
+
+    private static final class Tier {
+        private final int stepSeconds;
+        private final int capacity;
+        // 每个槽位当前保存的时间桶编号 (epochSeconds / stepSeconds)，-1 表示从未写入
+        private final long[] buckets;
+        private final float[][] values;
+        private final int[] counts;
+        private long latestBucket = -1L;
+
+        private Tier(Resolution resolution) {
+            this.stepSeconds = resolution.getStepSeconds();
+            this.capacity = resolution.getCapacity();
+            this.buckets = new long[capacity];
+            this.values = new float[METRICS.length][capacity];
+            this.counts = new int[METRICS.length * capacity];
+            Arrays.fill(buckets, -1L);
+        }
+
+        private int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) capacity);
+        }
+
+        private void record(long epochSeconds, float usage, float limit, float players, float latency) {
+            long bucket = Math.floorDiv(epochSeconds, stepSeconds);
+            int slot = slot(bucket);
+            if (buckets[slot] != bucket) {
+                buckets[slot] = bucket;
+                for (int m = 0; m < METRICS.length; m++) {
+                    values[m][slot] = Float.NaN;
+                    counts[m * capacity + slot] = 0;
+                }
+            }
+            latestBucket = Math.max(latestBucket, bucket);
+            accumulate(Metric.USAGE, slot, usage);
+            accumulate(Metric.LIMIT, slot, limit);
+            accumulate(Metric.PLAYERS, slot, players);
+            accumulate(Metric.LATENCY, slot, latency);
+        }
+
+        private void accumulate(Metric metric, int slot, float value) {
+            if (Float.isNaN(value)) {
+                return;
+            }
+            int countIndex = metric.ordinal() * capacity + slot;
+            int count = ++counts[countIndex];
+            float[] series = values[metric.ordinal()];
+            series[slot] = count == 1 ? value : series[slot] + (value - series[slot]) / count;
+        }
+    }
+}
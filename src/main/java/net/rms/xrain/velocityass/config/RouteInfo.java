@@ -4,76 +4,186 @@ import java.time.LocalTime;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 public class RouteInfo {
-    private String address;
-    private int priority;
-    private boolean enabled;
-    private long lastPing;
-    private boolean available;
-    
-    private long maxBandwidth;
-    private double currentBandwidthUsage;
-    private final Set<UUID> connectedPlayers; 
-    private long lastBandwidthUpdate;
-    
-    private TimeBasedBandwidthSchedule bandwidthSchedule;
+    private final String address;
+    // 配置项整体作为不可变对象发布，配置重载时一次 volatile 写入替换
+    private volatile RouteSettings settings;
+    private final LatencyStats latencyStats;
+    private final RouteHistory history;
+    private final LatencyHistogram connectLatency;
+    
+    // 运行时状态由检测线程、带宽统计线程和事件线程共同更新，整体作为不可变快照发布
+    private final AtomicReference<RouteState> state;
+    private final LongAdder selectionCount;
+    private final LongAdder fallbackCount;
+    private final LongAdder probeCount;
+    private final LongAdder probeFailureCount;
+    // 预测窗口内新连接还能使用的带宽，由预测任务定期更新，没有限制或没有预测时为正无穷
+    private volatile double forecastHeadroom;
     
-    // 带宽模式控制
-    private boolean useScheduledBandwidth; 
+    private final Set<UUID> connectedPlayers; 
     
     public RouteInfo(String address, int priority, boolean enabled) {
+        this(address, new RouteSettings(priority, 1, enabled, -1, null, false));
+    }
+    
+    public RouteInfo(String address, RouteSettings settings) {
         this.address = address;
-        this.priority = priority;
-        this.enabled = enabled;
-        this.lastPing = -1;
-        this.available = true;
-        this.maxBandwidth = -1; 
-        this.currentBandwidthUsage = 0.0;
+        this.settings = settings;
+        this.latencyStats = new LatencyStats();
+        this.history = new RouteHistory();
+        this.connectLatency = new LatencyHistogram();
+        this.state = new AtomicReference<>(RouteState.initial());
+        this.selectionCount = new LongAdder();
+        this.fallbackCount = new LongAdder();
+        this.probeCount = new LongAdder();
+        this.probeFailureCount = new LongAdder();
+        this.forecastHeadroom = Double.POSITIVE_INFINITY;
         this.connectedPlayers = ConcurrentHashMap.newKeySet();
-        this.lastBandwidthUpdate = System.currentTimeMillis();
-        this.bandwidthSchedule = null;
-        this.useScheduledBandwidth = false;
     }
     
     public String getAddress() {
         return address;
     }
     
-    public void setAddress(String address) {
-        this.address = address;
+    public RouteSettings getSettings() {
+        return settings;
+    }
+    
+    /**
+     * 配置重载时替换配置项，玩家、带宽、延迟统计和历史等运行时状态保持不变
+     */
+    void applySettings(RouteSettings settings) {
+        this.settings = settings;
     }
     
     public int getPriority() {
-        return priority;
+        return settings.getPriority();
     }
     
-    public void setPriority(int priority) {
-        this.priority = priority;
+    /**
+     * weighted-random 和 consistent-hash 策略使用的权重，0 表示只在其他路由都不可接纳时才会被选中
+     */
+    public int getWeight() {
+        return settings.getWeight();
     }
     
     public boolean isEnabled() {
-        return enabled;
+        return settings.isEnabled();
     }
     
-    public void setEnabled(boolean enabled) {
-        this.enabled = enabled;
+    /**
+     * 当前运行时状态的一致快照，需要同时读取多个状态字段时使用
+     */
+    public RouteState getState() {
+        return state.get();
     }
     
     public long getLastPing() {
-        return lastPing;
+        return state.get().getLastPing();
     }
     
     public void setLastPing(long lastPing) {
-        this.lastPing = lastPing;
+        state.updateAndGet(current -> current.withLastPing(lastPing));
+    }
+    
+    /**
+     * 同时更新可用性和延迟，不可用或 ping 不大于 0 时保留上一次的延迟
+     */
+    public void updateStatus(boolean available, long ping) {
+        state.updateAndGet(current -> current.withStatus(available, available && ping > 0 ? ping : current.getLastPing()));
+    }
+    
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+    
+    public RouteHistory getHistory() {
+        return history;
+    }
+    
+    /**
+     * 玩家从确定使用该路由到后端连接完成的耗时
+     */
+    public LatencyHistogram getConnectLatency() {
+        return connectLatency;
+    }
+    
+    /**
+     * 将当前带宽、上限、玩家数和延迟写入历史记录，未限速时上限记为 0，延迟未知时不记录
+     */
+    public void recordHistory(long timeMillis) {
+        double ping = getSmoothedPing();
+        history.record(timeMillis,
+                (float) getCurrentBandwidthUsage(),
+                isCurrentlyBandwidthLimited() ? getCurrentBandwidthLimit() : 0f,
+                getConnectedPlayerCount(),
+                ping > 0 ? (float) ping : Float.NaN);
+    }
+    
+    /**
+     * 平滑后的延迟（EWMA，毫秒），没有采样时退回到最后一次 ping，仍未知则返回 -1
+     */
+    public double getSmoothedPing() {
+        double ewma = latencyStats.getEwmaMillis();
+        return ewma >= 0 ? ewma : getLastPing();
     }
     
     public boolean isAvailable() {
-        return available;
+        return state.get().isAvailable();
     }
     
     public void setAvailable(boolean available) {
-        this.available = available;
+        state.updateAndGet(current -> current.withAvailable(available));
+    }
+    
+    public int getOnlinePlayers() {
+        return state.get().getOnlinePlayers();
+    }
+    
+    public int getMaxPlayers() {
+        return state.get().getMaxPlayers();
+    }
+    
+    public void setPlayerCounts(int onlinePlayers, int maxPlayers) {
+        state.updateAndGet(current -> current.withPlayerCounts(onlinePlayers, maxPlayers));
+    }
+    
+    public void recordSelection() {
+        selectionCount.increment();
+    }
+    
+    public long getSelectionCount() {
+        return selectionCount.sum();
+    }
+    
+    /**
+     * 所有路由都超过带宽阈值时，该路由作为 fallback 被选中
+     */
+    public void recordFallback() {
+        fallbackCount.increment();
+    }
+    
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+    
+    public void recordProbe(boolean success) {
+        probeCount.increment();
+        if (!success) {
+            probeFailureCount.increment();
+        }
+    }
+    
+    public long getProbeCount() {
+        return probeCount.sum();
+    }
+    
+    public long getProbeFailureCount() {
+        return probeFailureCount.sum();
     }
     
     public String getHost() {
@@ -86,20 +196,24 @@ public class RouteInfo {
     }
     
     public long getMaxBandwidth() {
-        return maxBandwidth;
-    }
-    
-    public void setMaxBandwidth(long maxBandwidth) {
-        this.maxBandwidth = maxBandwidth;
+        return settings.getMaxBandwidth();
     }
     
     public double getCurrentBandwidthUsage() {
-        return currentBandwidthUsage;
+        return state.get().getBandwidthUsage();
     }
     
     public void setCurrentBandwidthUsage(double currentBandwidthUsage) {
-        this.currentBandwidthUsage = currentBandwidthUsage;
-        this.lastBandwidthUpdate = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        state.updateAndGet(current -> current.withBandwidthUsage(currentBandwidthUsage, now));
+    }
+    
+    /**
+     * 原子地调整带宽累计值，结果不会小于 0
+     */
+    public void addBandwidthUsage(double delta) {
+        long now = System.currentTimeMillis();
+        state.updateAndGet(current -> current.withBandwidthUsage(Math.max(0.0, current.getBandwidthUsage() + delta), now));
     }
     
     public Set<UUID> getConnectedPlayers() {
@@ -118,70 +232,94 @@ public class RouteInfo {
         return connectedPlayers.size();
     }
     
+    public double getReservedBandwidth() {
+        return state.get().getReservedBandwidth();
+    }
+    
+    /**
+     * 原子地调整预留带宽，结果不会小于 0
+     */
+    public void addReservedBandwidth(double delta) {
+        state.updateAndGet(current -> current.withReservedBandwidth(Math.max(0.0, current.getReservedBandwidth() + delta)));
+    }
+    
+    /**
+     * 仅当预计占用（实测 + 预留）低于 capacity 时预留带宽，检查和预留在同一次原子更新中完成。
+     * capacity 不大于 0 表示不限制，总是预留成功
+     */
+    public boolean tryReserveBandwidth(double amount, double capacity) {
+        while (true) {
+            RouteState current = state.get();
+            if (capacity > 0 && current.getProjectedBandwidthUsage() >= capacity) {
+                return false;
+            }
+            if (state.compareAndSet(current, current.withReservedBandwidth(current.getReservedBandwidth() + amount))) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * 包含预留带宽的预计使用率（百分比），不限制带宽时为 0
+     */
+    public double getProjectedBandwidthUtilization() {
+        long currentLimit = getEffectiveBandwidthLimit();
+        if (currentLimit <= 0) {
+            return 0.0;
+        }
+        return (state.get().getProjectedBandwidthUsage() / currentLimit) * 100.0;
+    }
+    
     public long getLastBandwidthUpdate() {
-        return lastBandwidthUpdate;
+        return state.get().getLastBandwidthUpdate();
     }
     
     public void setLastBandwidthUpdate(long lastBandwidthUpdate) {
-        this.lastBandwidthUpdate = lastBandwidthUpdate;
+        state.updateAndGet(current -> current.withLastBandwidthUpdate(lastBandwidthUpdate));
     }
     
     public TimeBasedBandwidthSchedule getBandwidthSchedule() {
-        return bandwidthSchedule;
-    }
-    
-    public void setBandwidthSchedule(TimeBasedBandwidthSchedule bandwidthSchedule) {
-        this.bandwidthSchedule = bandwidthSchedule;
+        return settings.getBandwidthSchedule();
     }
     
     public boolean isUseScheduledBandwidth() {
-        return useScheduledBandwidth;
+        return settings.isUseScheduledBandwidth();
     }
     
-    public void setUseScheduledBandwidth(boolean useScheduledBandwidth) {
-        this.useScheduledBandwidth = useScheduledBandwidth;
+    private long getEffectiveBandwidthLimit() {
+        return settings.getEffectiveBandwidthLimit();
     }
     
     public boolean isBandwidthLimited() {
-        if (useScheduledBandwidth && bandwidthSchedule != null && bandwidthSchedule.isScheduleEnabled()) {
-            long currentLimit = bandwidthSchedule.getCurrentBandwidthLimit();
-            return currentLimit > 0;
-        }
-        return maxBandwidth > 0;
+        return getEffectiveBandwidthLimit() > 0;
     }
     
     public boolean isBandwidthAvailable() {
-        if (!isBandwidthLimited()) {
+        long currentLimit = getEffectiveBandwidthLimit();
+        if (currentLimit <= 0) {
             return true;
         }
-        long currentLimit = getCurrentBandwidthLimit();
-        return currentBandwidthUsage < currentLimit;
+        return getCurrentBandwidthUsage() < currentLimit;
     }
     
     public long getCurrentBandwidthLimit() {
-        if (useScheduledBandwidth && bandwidthSchedule != null && bandwidthSchedule.isScheduleEnabled()) {
-            long scheduleLimit = bandwidthSchedule.getCurrentBandwidthLimit();
-            if (scheduleLimit > 0) {
-                return scheduleLimit;
-            }
-        }
-        return maxBandwidth;
+        return settings.getCurrentBandwidthLimit();
     }
     
     public double getBandwidthUtilization() {
-        if (!isBandwidthLimited()) {
+        long currentLimit = getEffectiveBandwidthLimit();
+        if (currentLimit <= 0) {
             return 0.0; 
         }
-        long currentLimit = getCurrentBandwidthLimit();
-        return (currentBandwidthUsage / currentLimit) * 100.0;
+        return (getCurrentBandwidthUsage() / currentLimit) * 100.0;
     }
     
     public long getAvailableBandwidth() {
-        if (!isBandwidthLimited()) {
+        long currentLimit = getEffectiveBandwidthLimit();
+        if (currentLimit <= 0) {
             return Long.MAX_VALUE; 
         }
-        long currentLimit = getCurrentBandwidthLimit();
-        return Math.max(0, currentLimit - (long)currentBandwidthUsage);
+        return Math.max(0, currentLimit - (long) getCurrentBandwidthUsage());
     }
     
     // 方法别名，用于与 BandwidthAwareRouteSelector 兼容
@@ -193,7 +331,23 @@ public class RouteInfo {
         return isBandwidthLimited();
     }
     
+    /**
+     * 指定时间点生效的带宽限制，规则与 getCurrentBandwidthLimit() 相同
+     */
+    public long getBandwidthLimitAt(LocalTime time) {
+        return settings.getBandwidthLimitAt(time);
+    }
+    
+    public double getForecastHeadroom() {
+        return forecastHeadroom;
+    }
+    
+    public void setForecastHeadroom(double forecastHeadroom) {
+        this.forecastHeadroom = forecastHeadroom;
+    }
+    
     public BandwidthTimeSlot getCurrentTimeSlot() {
+        TimeBasedBandwidthSchedule bandwidthSchedule = settings.getBandwidthSchedule();
         if (bandwidthSchedule != null && bandwidthSchedule.isScheduleEnabled()) {
             return bandwidthSchedule.getCurrentTimeSlot();
         }
@@ -202,20 +356,23 @@ public class RouteInfo {
     
     @Override
     public String toString() {
-        long currentLimit = getCurrentBandwidthLimit();
+        RouteState snapshot = state.get();
+        RouteSettings current = settings;
+        long currentLimit = current.getCurrentBandwidthLimit();
         String scheduleInfo = "";
-        if (useScheduledBandwidth && bandwidthSchedule != null && bandwidthSchedule.hasTimeSlots()) {
+        if (current.isUseScheduledBandwidth() && current.getBandwidthSchedule() != null
+                && current.getBandwidthSchedule().hasTimeSlots()) {
             scheduleInfo = " [分时段带宽]";
-        } else if (!useScheduledBandwidth && maxBandwidth > 0) {
+        } else if (!current.isUseScheduledBandwidth() && current.getMaxBandwidth() > 0) {
             scheduleInfo = " [固定带宽]";
         }
         
         return String.format("RouteInfo{address='%s', priority=%d, enabled=%s, lastPing=%dms, available=%s, " +
                 "bandwidth=%.2f/%.2f KB/s (%.1f%%), players=%d%s}", 
-                address, priority, enabled, lastPing, available,
-                currentBandwidthUsage / 1024.0, 
+                address, current.getPriority(), current.isEnabled(), snapshot.getLastPing(), snapshot.isAvailable(),
+                snapshot.getBandwidthUsage() / 1024.0, 
                 currentLimit > 0 ? currentLimit / 1024.0 : -1,
-                getBandwidthUtilization(),
+                currentLimit > 0 ? snapshot.getBandwidthUsage() / currentLimit * 100.0 : 0.0,
                 connectedPlayers.size(),
                 scheduleInfo);
     }
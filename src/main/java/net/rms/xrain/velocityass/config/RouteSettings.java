@@ -0,0 +1,102 @@
+package net.rms.xrain.velocityass.config;
+
+import java.time.LocalTime;
+
+/**
+ * 路由的配置项（优先级、权重、启用状态、带宽限制和分时段调度）的不可变快照。
+ * RouteInfo 通过一个 volatile 引用持有，配置重载时整体替换；需要同时读取多个配置项时先取一次快照。
+ * 带宽调度在解析完成后不再修改
+ */
+public final class RouteSettings {
+    private final int priority;
+    private final int weight;
+    private final boolean enabled;
+    private final long maxBandwidth;
+    private final TimeBasedBandwidthSchedule bandwidthSchedule;
+    private final boolean useScheduledBandwidth;
+
+    public RouteSettings(int priority, int weight, boolean enabled, long maxBandwidth,
+                         TimeBasedBandwidthSchedule bandwidthSchedule, boolean useScheduledBandwidth) {
+        this.priority = priority;
+        this.weight = Math.max(0, weight);
+        this.enabled = enabled;
+        this.maxBandwidth = maxBandwidth;
+        this.bandwidthSchedule = bandwidthSchedule;
+        this.useScheduledBandwidth = useScheduledBandwidth;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    public TimeBasedBandwidthSchedule getBandwidthSchedule() {
+        return bandwidthSchedule;
+    }
+
+    public boolean isUseScheduledBandwidth() {
+        return useScheduledBandwidth;
+    }
+
+    private boolean isScheduleActive() {
+        return useScheduledBandwidth && bandwidthSchedule != null && bandwidthSchedule.isScheduleEnabled();
+    }
+
+    /**
+     * 当前生效的带宽限制，不大于 0 表示不限制。启用分时段带宽时以调度结果为准
+     */
+    public long getEffectiveBandwidthLimit() {
+        if (isScheduleActive()) {
+            return bandwidthSchedule.getCurrentBandwidthLimit();
+        }
+        return maxBandwidth;
+    }
+
+    /**
+     * 当前的带宽限制，调度结果不大于 0 时退回到固定带宽限制
+     */
+    public long getCurrentBandwidthLimit() {
+        if (isScheduleActive()) {
+            long scheduleLimit = bandwidthSchedule.getCurrentBandwidthLimit();
+            if (scheduleLimit > 0) {
+                return scheduleLimit;
+            }
+        }
+        return maxBandwidth;
+    }
+
+    public long getBandwidthLimitAt(LocalTime time) {
+        if (isScheduleActive()) {
+            long scheduleLimit = bandwidthSchedule.getCurrentBandwidthLimit(time);
+            if (scheduleLimit > 0) {
+                return scheduleLimit;
+            }
+        }
+        return maxBandwidth;
+    }
+
+    /**
+     * 所有配置项是否与另一份相同，带宽调度按内容比较
+     */
+    public boolean isSame(RouteSettings other) {
+        if (priority != other.priority || weight != other.weight || enabled != other.enabled
+                || maxBandwidth != other.maxBandwidth || useScheduledBandwidth != other.useScheduledBandwidth) {
+            return false;
+        }
+        if (bandwidthSchedule == null || other.bandwidthSchedule == null) {
+            return bandwidthSchedule == other.bandwidthSchedule;
+        }
+        return bandwidthSchedule.isSameSchedule(other.bandwidthSchedule);
+    }
+}
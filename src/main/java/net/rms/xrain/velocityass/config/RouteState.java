@@ -0,0 +1,97 @@
+package net.rms.xrain.velocityass.config;
+
+/**
+ * 路由运行时状态的不可变快照。
+ * RouteInfo 通过单个原子引用发布，每次修改都生成新快照，读取方拿到的字段总是来自同一次更新。
+ */
+public final class RouteState {
+    private final boolean available;
+    private final long lastPing;
+    private final double bandwidthUsage;
+    private final double reservedBandwidth;
+    private final long lastBandwidthUpdate;
+    private final int onlinePlayers;
+    private final int maxPlayers;
+
+    private RouteState(boolean available, long lastPing, double bandwidthUsage, double reservedBandwidth,
+                       long lastBandwidthUpdate, int onlinePlayers, int maxPlayers) {
+        this.available = available;
+        this.lastPing = lastPing;
+        this.bandwidthUsage = bandwidthUsage;
+        this.reservedBandwidth = reservedBandwidth;
+        this.lastBandwidthUpdate = lastBandwidthUpdate;
+        this.onlinePlayers = onlinePlayers;
+        this.maxPlayers = maxPlayers;
+    }
+
+    static RouteState initial() {
+        return new RouteState(true, -1, 0.0, 0.0, System.currentTimeMillis(), -1, -1);
+    }
+
+    RouteState withAvailable(boolean available) {
+        return available == this.available ? this
+                : new RouteState(available, lastPing, bandwidthUsage, reservedBandwidth, lastBandwidthUpdate, onlinePlayers, maxPlayers);
+    }
+
+    RouteState withLastPing(long lastPing) {
+        return new RouteState(available, lastPing, bandwidthUsage, reservedBandwidth, lastBandwidthUpdate, onlinePlayers, maxPlayers);
+    }
+
+    RouteState withStatus(boolean available, long lastPing) {
+        return new RouteState(available, lastPing, bandwidthUsage, reservedBandwidth, lastBandwidthUpdate, onlinePlayers, maxPlayers);
+    }
+
+    RouteState withBandwidthUsage(double bandwidthUsage, long updateTime) {
+        return new RouteState(available, lastPing, bandwidthUsage, reservedBandwidth, updateTime, onlinePlayers, maxPlayers);
+    }
+
+    RouteState withReservedBandwidth(double reservedBandwidth) {
+        return new RouteState(available, lastPing, bandwidthUsage, reservedBandwidth, lastBandwidthUpdate, onlinePlayers, maxPlayers);
+    }
+
+    RouteState withLastBandwidthUpdate(long lastBandwidthUpdate) {
+        return new RouteState(available, lastPing, bandwidthUsage, reservedBandwidth, lastBandwidthUpdate, onlinePlayers, maxPlayers);
+    }
+
+    RouteState withPlayerCounts(int onlinePlayers, int maxPlayers) {
+        return new RouteState(available, lastPing, bandwidthUsage, reservedBandwidth, lastBandwidthUpdate, onlinePlayers, maxPlayers);
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public long getLastPing() {
+        return lastPing;
+    }
+
+    public double getBandwidthUsage() {
+        return bandwidthUsage;
+    }
+
+    /**
+     * 已分配到该路由、但实测带宽尚未反映出来的玩家所预留的带宽
+     */
+    public double getReservedBandwidth() {
+        return reservedBandwidth;
+    }
+
+    /**
+     * 实测带宽加上未兑现的预留带宽，准入判断以此为准
+     */
+    public double getProjectedBandwidthUsage() {
+        return bandwidthUsage + reservedBandwidth;
+    }
+
+    public long getLastBandwidthUpdate() {
+        return lastBandwidthUpdate;
+    }
+
+    public int getOnlinePlayers() {
+        return onlinePlayers;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+}
@@ -0,0 +1,55 @@
+package net.rms.xrain.velocityass.config;
+
+public enum RouteStrategyType {
+    /**
+     * 按优先级依次尝试，第一条带宽未超过阈值的路由胜出（默认）
+     */
+    PRIORITY("priority"),
+    /**
+     * 选择平滑延迟最低的路由，没有延迟数据的路由排在最后
+     */
+    LOWEST_LATENCY("lowest-latency"),
+    /**
+     * 选择预计带宽使用率（实测 + 预留）最低的路由
+     */
+    LEAST_UTILIZATION("least-utilization"),
+    /**
+     * 选择当前分配玩家最少的路由
+     */
+    LEAST_CONNECTIONS("least-connections"),
+    /**
+     * 按路由的 weight 加权随机选择
+     */
+    WEIGHTED_RANDOM("weighted-random"),
+    /**
+     * 随机取两条路由，选择预计带宽使用率较低的一条 (power of two choices)
+     */
+    POWER_OF_TWO("p2c"),
+    /**
+     * 按玩家 UUID 做一致性哈希，同一玩家总是落在同一条路由上，除非该路由不可用或超过带宽阈值
+     */
+    CONSISTENT_HASH("consistent-hash");
+    
+    private final String configName;
+    
+    RouteStrategyType(String configName) {
+        this.configName = configName;
+    }
+    
+    public String getConfigName() {
+        return configName;
+    }
+    
+    public static RouteStrategyType fromString(String value) {
+        if (value == null) {
+            return null;
+        }
+        String normalized = value.trim();
+        for (RouteStrategyType type : values()) {
+            if (type.configName.equalsIgnoreCase(normalized) || type.name().equalsIgnoreCase(normalized.replace('-', '_'))) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -9,6 +9,8 @@ public class ServerConfig {
     private boolean autoSort;
     private int pingInterval;
     private int pingTimeout;
+    private ProbeMode probeMode;
+    private RouteStrategyType routeStrategy;
     
     public ServerConfig(String serverName) {
         this.serverName = serverName;
@@ -16,6 +18,8 @@ public class ServerConfig {
         this.autoSort = true;
         this.pingInterval = 30;
         this.pingTimeout = 5000;
+        this.probeMode = ProbeMode.TCP;
+        this.routeStrategy = RouteStrategyType.PRIORITY;
     }
     
     public String getServerName() {
@@ -62,12 +66,36 @@ public class ServerConfig {
         this.pingTimeout = pingTimeout;
     }
     
+    public ProbeMode getProbeMode() {
+        return probeMode;
+    }
+    
+    public void setProbeMode(ProbeMode probeMode) {
+        this.probeMode = probeMode;
+    }
+    
+    public RouteStrategyType getRouteStrategy() {
+        return routeStrategy;
+    }
+    
+    public void setRouteStrategy(RouteStrategyType routeStrategy) {
+        this.routeStrategy = routeStrategy;
+    }
+    
+    /**
+     * 服务器级别设置是否与另一个配置相同，不比较路由
+     */
+    public boolean hasSameSettings(ServerConfig other) {
+        return autoSort == other.autoSort && pingInterval == other.pingInterval && pingTimeout == other.pingTimeout
+                && probeMode == other.probeMode && routeStrategy == other.routeStrategy;
+    }
+    
     public RouteInfo getBestRoute() {
         return routes.stream()
                 .filter(route -> route.isEnabled() && route.isAvailable())
                 .min((r1, r2) -> {
-                    if (autoSort && r1.getLastPing() > 0 && r2.getLastPing() > 0) {
-                        return Long.compare(r1.getLastPing(), r2.getLastPing());
+                    if (autoSort && r1.getSmoothedPing() > 0 && r2.getSmoothedPing() > 0) {
+                        return Double.compare(r1.getSmoothedPing(), r2.getSmoothedPing());
                     }
                     return Integer.compare(r1.getPriority(), r2.getPriority());
                 })
@@ -76,7 +104,7 @@ public class ServerConfig {
     
     @Override
     public String toString() {
-        return String.format("ServerConfig{serverName='%s', routes=%d, autoSort=%s, pingInterval=%ds, pingTimeout=%dms}",
-                serverName, routes.size(), autoSort, pingInterval, pingTimeout);
+        return String.format("ServerConfig{serverName='%s', routes=%d, autoSort=%s, pingInterval=%ds, pingTimeout=%dms, pingMode=%s, routeStrategy=%s}",
+                serverName, routes.size(), autoSort, pingInterval, pingTimeout, probeMode, routeStrategy.getConfigName());
     }
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 package net.rms.xrain.velocityass.config;
 
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -9,6 +13,10 @@ public class TimeBasedBandwidthSchedule {
     private long defaultBandwidth;
     private List<BandwidthTimeSlot> timeSlots;
     
+    // 编译后的分钟表和当前生效的限制，配置变化时失效
+    private volatile CompiledBandwidthSchedule compiled;
+    private volatile CurrentLimit currentLimit;
+    
     public TimeBasedBandwidthSchedule() {
         this.defaultBandwidth = -1;
         this.timeSlots = new ArrayList<>();
@@ -23,57 +31,103 @@ public class TimeBasedBandwidthSchedule {
         return defaultBandwidth;
     }
     
-    public void setDefaultBandwidth(long defaultBandwidth) {
+    public synchronized void setDefaultBandwidth(long defaultBandwidth) {
         this.defaultBandwidth = defaultBandwidth;
+        invalidate();
     }
     
     public List<BandwidthTimeSlot> getTimeSlots() {
-        return timeSlots;
+        return Collections.unmodifiableList(timeSlots);
     }
     
-    public void setTimeSlots(List<BandwidthTimeSlot> timeSlots) {
-        this.timeSlots = timeSlots != null ? timeSlots : new ArrayList<>();
+    public synchronized void setTimeSlots(List<BandwidthTimeSlot> timeSlots) {
+        this.timeSlots = timeSlots != null ? new ArrayList<>(timeSlots) : new ArrayList<>();
+        invalidate();
     }
     
-    public void addTimeSlot(BandwidthTimeSlot timeSlot) {
+    public synchronized void addTimeSlot(BandwidthTimeSlot timeSlot) {
         if (timeSlot != null && timeSlot.isValid()) {
             this.timeSlots.add(timeSlot);
             sortTimeSlotsByPriority();
+            invalidate();
         }
     }
     
-    public void removeTimeSlot(BandwidthTimeSlot timeSlot) {
-        this.timeSlots.remove(timeSlot);
+    public synchronized void removeTimeSlot(BandwidthTimeSlot timeSlot) {
+        if (this.timeSlots.remove(timeSlot)) {
+            invalidate();
+        }
     }
     
-    public void clearTimeSlots() {
+    public synchronized void clearTimeSlots() {
         this.timeSlots.clear();
+        invalidate();
     }
     
-    public long getCurrentBandwidthLimit() {
-        return getCurrentBandwidthLimit(LocalTime.now());
+    /**
+     * 预先编译分钟表，配置加载完成后调用，避免第一次选路时再编译
+     */
+    public void compile() {
+        compiled();
     }
     
-    public long getCurrentBandwidthLimit(LocalTime currentTime) {
-        for (BandwidthTimeSlot slot : timeSlots) {
-            if (slot.isTimeInSlot(currentTime)) {
-                return slot.getBandwidth();
+    private CompiledBandwidthSchedule compiled() {
+        CompiledBandwidthSchedule schedule = compiled;
+        if (schedule == null) {
+            synchronized (this) {
+                schedule = compiled;
+                if (schedule == null) {
+                    schedule = CompiledBandwidthSchedule.compile(defaultBandwidth, timeSlots);
+                    compiled = schedule;
+                }
             }
         }
-        return defaultBandwidth;
+        return schedule;
+    }
+    
+    private void invalidate() {
+        compiled = null;
+        currentLimit = null;
+    }
+    
+    public long getCurrentBandwidthLimit() {
+        return currentLimit().limit;
+    }
+    
+    public long getCurrentBandwidthLimit(LocalTime currentTime) {
+        return compiled().getLimit(CompiledBandwidthSchedule.minuteOfDay(currentTime));
     }
     
     public BandwidthTimeSlot getCurrentTimeSlot() {
-        return getCurrentTimeSlot(LocalTime.now());
+        return currentLimit().slot;
     }
     
     public BandwidthTimeSlot getCurrentTimeSlot(LocalTime currentTime) {
-        for (BandwidthTimeSlot slot : timeSlots) {
-            if (slot.isTimeInSlot(currentTime)) {
-                return slot;
-            }
+        return compiled().getSlot(CompiledBandwidthSchedule.minuteOfDay(currentTime));
+    }
+    
+    /**
+     * 当前生效的限制在下一次时间段切换前保持不变，只有过了切换时刻（或系统时钟回拨）才重新查表
+     */
+    private CurrentLimit currentLimit() {
+        CurrentLimit current = currentLimit;
+        long now = System.currentTimeMillis();
+        if (current != null && now >= current.validFromMillis && now < current.validUntilMillis) {
+            return current;
+        }
+        
+        CompiledBandwidthSchedule schedule = compiled();
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime localNow = LocalDateTime.now(zone).truncatedTo(ChronoUnit.MINUTES);
+        int minute = CompiledBandwidthSchedule.minuteOfDay(localNow.toLocalTime());
+        long validUntil = localNow.plusMinutes(schedule.minutesUntilTransition(minute))
+                .atZone(zone).toInstant().toEpochMilli();
+        
+        current = new CurrentLimit(schedule.getLimit(minute), schedule.getSlot(minute), now, validUntil);
+        if (compiled == schedule) {
+            currentLimit = current;
         }
-        return null;
+        return current;
     }
     
     public boolean hasTimeSlots() {
@@ -136,4 +190,38 @@ public class TimeBasedBandwidthSchedule {
     public boolean isEmpty() {
         return !hasTimeSlots() && defaultBandwidth <= 0;
     }
+    
+    /**
+     * 默认带宽和所有时间段（开始、结束、带宽、优先级）是否与另一个调度完全相同，用于配置重载时判断是否有变化
+     */
+    public synchronized boolean isSameSchedule(TimeBasedBandwidthSchedule other) {
+        if (other == null || defaultBandwidth != other.defaultBandwidth || timeSlots.size() != other.timeSlots.size()) {
+            return false;
+        }
+        for (int i = 0; i < timeSlots.size(); i++) {
+            BandwidthTimeSlot slot = timeSlots.get(i);
+            BandwidthTimeSlot otherSlot = other.timeSlots.get(i);
+            if (!slot.getStartTime().equals(otherSlot.getStartTime())
+                    || !slot.getEndTime().equals(otherSlot.getEndTime())
+                    || slot.getBandwidth() != otherSlot.getBandwidth()
+                    || slot.getPriority() != otherSlot.getPriority()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static final class CurrentLimit {
+        private final long limit;
+        private final BandwidthTimeSlot slot;
+        private final long validFromMillis;
+        private final long validUntilMillis;
+        
+        private CurrentLimit(long limit, BandwidthTimeSlot slot, long validFromMillis, long validUntilMillis) {
+            this.limit = limit;
+            this.slot = slot;
+            this.validFromMillis = validFromMillis;
+            this.validUntilMillis = validUntilMillis;
+        }
+    }
 }
\ No newline at end of file
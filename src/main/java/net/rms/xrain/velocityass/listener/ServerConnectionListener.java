@@ -2,19 +2,21 @@ package net.rms.xrain.velocityass.listener;
 
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.KickedFromServerEvent;
 import com.velocitypowered.api.event.player.ServerConnectedEvent;
 import com.velocitypowered.api.event.player.ServerPreConnectEvent;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
-import com.velocitypowered.api.proxy.server.ServerInfo;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.JoinLatencyRecorder;
 import net.rms.xrain.velocityass.service.RouteManager;
+import net.rms.xrain.velocityass.service.RouteServerPool;
 import org.slf4j.Logger;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -25,6 +27,8 @@ public class ServerConnectionListener {
     private final ProxyServer proxyServer;
     private final Object plugin;
     private final Map<UUID, Integer> retryAttempts = new ConcurrentHashMap<>();
+    // 已确定路由、尚未完成后端连接的玩家，用于统计后端连接耗时
+    private final Map<UUID, PendingConnect> pendingConnects = new ConcurrentHashMap<>();
     private static final int MAX_RETRY_ATTEMPTS = 2;
     
     public ServerConnectionListener(RouteManager routeManager, Logger logger, ProxyServer proxyServer, Object plugin) {
@@ -36,8 +40,9 @@ public class ServerConnectionListener {
     
     @Subscribe
     public void onServerPreConnect(ServerPreConnectEvent event) {
+        long startNanos = System.nanoTime();
         RegisteredServer originalServer = event.getOriginalServer();
-        if (originalServer == null) {
+        if (originalServer == null || !event.getResult().isAllowed()) {
             return;
         }
         
@@ -48,6 +53,16 @@ public class ServerConnectionListener {
             return;
         }
         
+        try {
+            redirectToBestRoute(event, originalServer, serverName, startNanos);
+        } finally {
+            routeManager.getJoinLatency().record(JoinLatencyRecorder.Stage.PRE_CONNECT, serverName,
+                    System.nanoTime() - startNanos);
+        }
+    }
+    
+    private void redirectToBestRoute(ServerPreConnectEvent event, RegisteredServer originalServer,
+                                     String serverName, long startNanos) {
         RouteInfo bestRoute = routeManager.selectBestRoute(serverName, event.getPlayer().getUniqueId());
         if (bestRoute == null) {
             logger.warn("服务器 {} 没有可用路由，玩家 {} 连接可能失败", 
@@ -55,101 +70,80 @@ public class ServerConnectionListener {
             return;
         }
         
-        String originalAddress = originalServer.getServerInfo().getAddress().getHostString() + ":" + 
-                                originalServer.getServerInfo().getAddress().getPort();
+        String originalAddress = RouteServerPool.formatAddress(originalServer.getServerInfo());
+        pendingConnects.put(event.getPlayer().getUniqueId(), new PendingConnect(serverName, bestRoute, startNanos));
         
         if (!originalAddress.equals(bestRoute.getAddress())) {
-            event.setResult(ServerPreConnectEvent.ServerResult.denied());
+            RegisteredServer routeServer = routeManager.getRouteServer(serverName, bestRoute);
+            if (routeServer == null) {
+                logger.warn("路由 {} -> {} 没有对应的服务器实例，使用原始地址连接", serverName, bestRoute.getAddress());
+                return;
+            }
             
-            proxyServer.getScheduler().buildTask(plugin, () -> {
-                connectPlayerToRoute(event.getPlayer(), serverName, bestRoute, originalAddress);
-            }).delay(100, TimeUnit.MILLISECONDS).schedule();
+            // 直接在预连接事件中改写目标服务器，只需一次连接尝试
+            event.setResult(ServerPreConnectEvent.ServerResult.allowed(routeServer));
+            
+            long overheadNanos = System.nanoTime() - startNanos;
+            routeManager.recordRedirect(overheadNanos);
+            logger.debug("玩家 {} 连接服务器 {} 重定向路由: {} -> {} (选路耗时: {}μs)", 
+                    event.getPlayer().getUsername(), serverName, originalAddress, bestRoute.getAddress(),
+                    TimeUnit.NANOSECONDS.toMicros(overheadNanos));
         } else {
             logger.debug("玩家 {} 连接服务器 {} 使用原始地址 {}", 
                     event.getPlayer().getUsername(), serverName, originalAddress);
         }
     }
     
-    private void connectPlayerToRoute(com.velocitypowered.api.proxy.Player player, String serverName, RouteInfo route, String originalAddress) {
-        try {
-            if (!player.isActive()) {
-                logger.warn("玩家 {} 已不在线，取消路由连接", player.getUsername());
+    @Subscribe
+    public void onKickedFromServer(KickedFromServerEvent event) {
+        if (!event.kickedDuringServerConnect()) {
+            return;
+        }
+        
+        Player player = event.getPlayer();
+        pendingConnects.remove(player.getUniqueId());
+        String serverName = event.getServer().getServerInfo().getName();
+        RouteInfo route = routeManager.getPlayerRoute(player.getUniqueId());
+        if (route == null || !serverName.equals(routeManager.getPlayerRouteServer(player.getUniqueId()))
+                || routeManager.getRouteServer(serverName, route) != event.getServer()) {
+            return;
+        }
+        
+        String errorMessage = event.getServerKickReason()
+                .map(component -> PlainTextComponentSerializer.plainText().serialize(component))
+                .orElse("未知错误");
+        
+        logger.error("玩家 {} 通过路由 {} 连接到 {} 失败: {}", 
+                player.getUsername(), route.getAddress(), serverName, errorMessage);
+        
+        if (isViaVersionRelatedError(errorMessage)) {
+            int currentRetries = retryAttempts.getOrDefault(player.getUniqueId(), 0);
+            if (currentRetries < MAX_RETRY_ATTEMPTS) {
+                logger.warn("检测到ViaVersion相关连接错误（重试 {}/{}），尝试重新连接: {}", 
+                        currentRetries + 1, MAX_RETRY_ATTEMPTS, errorMessage);
+                retryAttempts.put(player.getUniqueId(), currentRetries + 1);
+                pendingConnects.put(player.getUniqueId(), new PendingConnect(serverName, route, System.nanoTime()));
+                event.setResult(KickedFromServerEvent.RedirectPlayer.create(event.getServer()));
                 return;
             }
+            logger.error("ViaVersion相关错误重试次数已达上限，停止重试: {}", errorMessage);
+            retryAttempts.remove(player.getUniqueId());
+        }
+        
+        if (isNetworkConnectivityIssue(errorMessage)) {
+            logger.warn("检测到网络连接问题，标记路由不可用: {} -> {}", serverName, route.getAddress());
+            routeManager.markRouteUnavailable(serverName, route.getAddress());
             
-            if (player.getCurrentServer().isPresent()) {
-                String currentServerName = player.getCurrentServer().get().getServerInfo().getName();
-                String currentAddress = player.getCurrentServer().get().getServerInfo().getAddress().getHostString() + ":" +
-                                       player.getCurrentServer().get().getServerInfo().getAddress().getPort();
-                
-                if (route.getAddress().equals(currentAddress)) {
-                    logger.info("玩家 {} 已经连接到路由 {}，跳过重复连接", 
-                            player.getUsername(), route.getAddress());
-                    return;
-                }
+            RouteInfo fallbackRoute = routeManager.selectBestRoute(serverName, player.getUniqueId());
+            RegisteredServer fallbackServer = fallbackRoute != null && fallbackRoute != route
+                    ? routeManager.getRouteServer(serverName, fallbackRoute) : null;
+            if (fallbackServer != null) {
+                logger.info("为玩家 {} 切换到备用路由 {}", player.getUsername(), fallbackRoute.getAddress());
+                pendingConnects.put(player.getUniqueId(), new PendingConnect(serverName, fallbackRoute, System.nanoTime()));
+                event.setResult(KickedFromServerEvent.RedirectPlayer.create(fallbackServer));
             }
-            
-            InetSocketAddress routeAddress = new InetSocketAddress(route.getHost(), route.getPort());
-            ServerInfo routeServerInfo = new ServerInfo(serverName + "_temp", routeAddress);
-            
-            RegisteredServer tempServer = proxyServer.registerServer(routeServerInfo);
-            
-            player.createConnectionRequest(tempServer).connect().thenAccept(result -> {
-                if (result.isSuccessful()) {
-                    logger.info("玩家 {} 成功通过路由连接到 {}: {} -> {} (延迟: {}ms)", 
-                            player.getUsername(), 
-                            serverName,
-                            originalAddress, 
-                            route.getAddress(),
-                            route.getLastPing() > 0 ? route.getLastPing() : "未知");
-                    retryAttempts.remove(player.getUniqueId());
-                } else {
-                    String errorMessage = result.getReasonComponent()
-                            .map(component -> net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer.plainText().serialize(component))
-                            .orElse("未知错误");
-                    
-                    logger.error("玩家 {} 通过路由连接到 {} 失败: {}", 
-                            player.getUsername(), 
-                            serverName,
-                            errorMessage);
-                    
-                    if (isViaVersionRelatedError(errorMessage)) {
-                        int currentRetries = retryAttempts.getOrDefault(player.getUniqueId(), 0);
-                        if (currentRetries < MAX_RETRY_ATTEMPTS) {
-                            logger.warn("检测到ViaVersion相关连接错误（重试 {}/{}），尝试重新连接: {}", 
-                                    currentRetries + 1, MAX_RETRY_ATTEMPTS, errorMessage);
-                            retryAttempts.put(player.getUniqueId(), currentRetries + 1);
-                            retryConnectionAfterDelay(player, serverName, route, originalAddress, 500);
-                            return;
-                        } else {
-                            logger.error("ViaVersion相关错误重试次数已达上限，停止重试: {}", errorMessage);
-                            retryAttempts.remove(player.getUniqueId());
-                        }
-                    }
-                    
-                    if (isNetworkConnectivityIssue(errorMessage)) {
-                        logger.warn("检测到网络连接问题，标记路由不可用: {} -> {}", serverName, route.getAddress());
-                        routeManager.markRouteUnavailable(serverName, route.getAddress());
-                    } else {
-                        logger.info("连接失败原因非网络问题，保持路由可用状态: {} -> {}", serverName, route.getAddress());
-                    }
-                }
-                
-                proxyServer.getScheduler().buildTask(plugin, () -> {
-                    try {
-                        proxyServer.unregisterServer(routeServerInfo);
-                        logger.debug("已清理临时服务器注册: {}", routeServerInfo.getName());
-                    } catch (Exception e) {
-                        logger.warn("清理临时服务器注册失败: {}, 错误: {}", routeServerInfo.getName(), e.getMessage());
-                    }
-                }).delay(2, java.util.concurrent.TimeUnit.SECONDS).schedule();
-            });
-            
-        } catch (Exception e) {
-            logger.error("创建路由连接失败，玩家: {}, 服务器: {}, 路由: {}, 错误: {}", 
-                    player.getUsername(), serverName, route.getAddress(), e.getMessage());
-            
-            routeManager.markRouteUnavailable(serverName, route.getAddress());
+        } else {
+            logger.info("连接失败原因非网络问题，保持路由可用状态: {} -> {}", serverName, route.getAddress());
         }
     }
     
@@ -169,21 +163,6 @@ public class ServerConnectionListener {
                lowercaseError.contains("informativeexception");
     }
     
-    /**
-     * 延迟重试连接（仅用于ViaVersion相关错误）
-     */
-    private void retryConnectionAfterDelay(Player player, String serverName, RouteInfo route, String originalAddress, int delayMs) {
-        if (!player.isActive()) {
-            logger.debug("玩家 {} 已下线，取消重试连接", player.getUsername());
-            return;
-        }
-        
-        proxyServer.getScheduler().buildTask(plugin, () -> {
-            logger.info("重试为玩家 {} 连接到路由 {}", player.getUsername(), route.getAddress());
-            connectPlayerToRoute(player, serverName, route, originalAddress);
-        }).delay(delayMs, TimeUnit.MILLISECONDS).schedule();
-    }
-    
     private boolean isNetworkConnectivityIssue(String errorMessage) {
         if (errorMessage == null) return true;
         
@@ -207,17 +186,16 @@ public class ServerConnectionListener {
         Player player = event.getPlayer();
         String newServerName = event.getServer().getServerInfo().getName();
         
-        String oldRouteAddress = routeManager.getPlayerRouteMapping().get(player.getUniqueId());
-        if (oldRouteAddress != null) {
-            routeManager.getAllServerConfigs().values().forEach(serverConfig -> {
-                serverConfig.getRoutes().forEach(route -> {
-                    if (route.removeConnectedPlayer(player.getUniqueId())) {
-                        logger.debug("玩家 {} 从路由 {} 的玩家列表中移除", player.getUsername(), route.getAddress());
-                    }
-                });
-            });
+        PendingConnect pending = pendingConnects.remove(player.getUniqueId());
+        if (pending != null && pending.serverName.equals(newServerName)) {
+            routeManager.getJoinLatency().recordConnect(newServerName, pending.route, System.nanoTime() - pending.startNanos);
         }
         
+        InetSocketAddress newServerAddress = event.getServer().getServerInfo().getAddress();
+        routeManager.onPlayerServerConnected(player.getUniqueId(), newServerName,
+                newServerAddress.getHostString() + ":" + newServerAddress.getPort());
+        retryAttempts.remove(player.getUniqueId());
+        
         proxyServer.getScheduler()
                 .buildTask(plugin, () -> {
                     if (player.isActive()) {
@@ -236,7 +214,20 @@ public class ServerConnectionListener {
         
         routeManager.onPlayerDisconnect(player.getUniqueId());
         retryAttempts.remove(player.getUniqueId());
+        pendingConnects.remove(player.getUniqueId());
         
         logger.debug("玩家 {} 断开连接，已清理路由映射和重试计数器", player.getUsername());
     }
-}
\ No newline at end of file
+    
+    private static final class PendingConnect {
+        private final String serverName;
+        private final RouteInfo route;
+        private final long startNanos;
+        
+        private PendingConnect(String serverName, RouteInfo route, long startNanos) {
+            this.serverName = serverName;
+            this.route = route;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -1,238 +1,130 @@
 package net.rms.xrain.velocityass.service;
 
-import com.velocitypowered.api.proxy.Player;
-import com.velocitypowered.api.proxy.ProxyServer;
-import com.velocitypowered.api.proxy.player.BandwidthManager;
-import com.velocitypowered.api.proxy.player.BandwidthSnapshot;
-import com.velocitypowered.api.proxy.player.PlayerBandwidthStats;
 import net.rms.xrain.velocityass.config.BandwidthTimeSlot;
 import net.rms.xrain.velocityass.config.RouteInfo;
-import net.rms.xrain.velocityass.config.ServerConfig;
 import org.slf4j.Logger;
 
-import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class BandwidthAwareRouteSelector {
     
-    private final ProxyServer proxyServer;
     private final Logger logger;
-    private final BandwidthManager bandwidthManager;
-    private final ScheduledExecutorService scheduler;
     
-    private static final long BANDWIDTH_UPDATE_INTERVAL = 5; 
     private static final double BANDWIDTH_THRESHOLD = 0.85; 
-    private static final long BANDWIDTH_DATA_MAX_AGE = 10_000; 
     
-    public BandwidthAwareRouteSelector(ProxyServer proxyServer, Logger logger) {
-        this.proxyServer = proxyServer;
+    public BandwidthAwareRouteSelector(Logger logger) {
         this.logger = logger;
-        this.bandwidthManager = proxyServer.getBandwidthManager();
-        this.scheduler = Executors.newScheduledThreadPool(1);
-        
-        startBandwidthMonitoring();
     }
     
-    public RouteInfo selectBestRoute(ServerConfig serverConfig, UUID playerId) {
-        if (serverConfig == null || serverConfig.getRoutes().isEmpty()) {
+    /**
+     * 按与玩家加入时相同的规则预估当前会选中的路由，不预留带宽、不记录日志，供命令展示使用
+     */
+    public RouteInfo previewRoute(RoutingTable.ServerRoutes serverRoutes) {
+        if (serverRoutes == null) {
             return null;
         }
         
-        ensureFreshBandwidthData(serverConfig);
-        
-        List<RouteInfo> routes = serverConfig.getRoutes();
-        
-        RouteInfo selectedRoute = routes.stream()
-                .filter(route -> route.isEnabled() && route.isAvailable())
-                .sorted((r1, r2) -> Integer.compare(r1.getPriority(), r2.getPriority()))
-                .filter(this::isBandwidthAvailableForNewConnection)
-                .findFirst()
-                .orElse(null);
-        
-        if (selectedRoute != null) {
-            serverConfig.getRoutes().forEach(route -> route.removeConnectedPlayer(playerId));
-            selectedRoute.addConnectedPlayer(playerId);
-            
-            String scheduleInfo = "";
-            if (selectedRoute.getBandwidthSchedule() != null && selectedRoute.getBandwidthSchedule().hasTimeSlots()) {
-                BandwidthTimeSlot currentSlot = selectedRoute.getCurrentTimeSlot();
-                if (currentSlot != null) {
-                    scheduleInfo = String.format(" [时间段: %s-%s]", currentSlot.getStartTime(), currentSlot.getEndTime());
-                } else {
-                    scheduleInfo = " [默认带宽]";
-                }
-            }
-            
-            logger.debug("为玩家 {} 选择路由: {} (优先级: {}, 带宽使用率: {:.1f}%{})", 
-                    playerId, selectedRoute.getAddress(), 
-                    selectedRoute.getPriority(), selectedRoute.getCurrentBandwidthUtilization(), scheduleInfo);
-        } else {
-            logger.warn("服务器 {} 没有可用的路由（所有路由都已达到带宽限制）", serverConfig.getServerName());
-        }
-        
-        return selectedRoute;
-    }
-    
-    public RouteInfo selectBestRouteWithFallback(ServerConfig serverConfig, UUID playerId) {
-        RouteInfo route = selectBestRoute(serverConfig, playerId);
-        
+        RouteInfo route = serverRoutes.getStrategy().select(serverRoutes, null,
+                candidate -> isBandwidthAvailableForNewConnection(candidate) && candidate.getForecastHeadroom() > 0);
         if (route == null) {
-            route = serverConfig.getRoutes().stream()
-                    .filter(r -> r.isEnabled() && r.isAvailable())
-                    .sorted((r1, r2) -> {
-                        int priorityCompare = Integer.compare(r1.getPriority(), r2.getPriority());
-                        if (priorityCompare != 0) {
-                            return priorityCompare;
-                        }
-                        return Double.compare(r1.getCurrentBandwidthUtilization(), r2.getCurrentBandwidthUtilization());
-                    })
-                    .findFirst()
-                    .orElse(null);
-                    
-            if (route != null) {
-                serverConfig.getRoutes().forEach(r -> r.removeConnectedPlayer(playerId));
-                route.addConnectedPlayer(playerId);
-                
-                String scheduleInfo = "";
-                if (route.getBandwidthSchedule() != null && route.getBandwidthSchedule().hasTimeSlots()) {
-                    BandwidthTimeSlot currentSlot = route.getCurrentTimeSlot();
-                    if (currentSlot != null) {
-                        scheduleInfo = String.format(" [时间段: %s-%s]", currentSlot.getStartTime(), currentSlot.getEndTime());
-                    } else {
-                        scheduleInfo = " [默认带宽]";
-                    }
-                }
-                
-                logger.warn("使用fallback路由为玩家 {} 选择: {} (带宽使用率: {:.1f}%{})", 
-                        playerId, route.getAddress(), route.getCurrentBandwidthUtilization(), scheduleInfo);
-            }
+            route = serverRoutes.getStrategy().select(serverRoutes, null, this::isBandwidthAvailableForNewConnection);
         }
-        
         return route;
     }
     
-    private boolean isBandwidthAvailableForNewConnection(RouteInfo route) {
-        if (!route.isCurrentlyBandwidthLimited()) {
-            return true;
+    /**
+     * 按服务器配置的选路策略为即将连接的玩家选择路由并预留带宽。
+     * 检查容量和预留在同一次原子更新中完成，同一时刻大量玩家加入时，
+     * 前面的玩家预留的带宽会立即计入后面玩家的准入判断，不会全部挤到同一条路由上。
+     * 预计在预测窗口内达到阈值的路由会被优先避开，
+     * 所有路由都超过阈值时仍按 fallback 规则选择并强制预留。
+     */
+    public RouteInfo admitPlayer(RoutingTable.ServerRoutes serverRoutes, UUID playerId, double estimatedBandwidth) {
+        if (serverRoutes == null) {
+            return null;
         }
         
-        double utilizationRate = route.getCurrentBandwidthUtilization() / 100.0;
-        return utilizationRate < BANDWIDTH_THRESHOLD;
-    }
-    
-    private void startBandwidthMonitoring() {
-        try {
-            logger.info("执行初始带宽数据更新...");
-            updateAllRoutesBandwidthUsage();
-        } catch (Exception e) {
-            logger.warn("初始带宽数据更新失败", e);
+        // 先避开预计很快达到阈值的路由，所有路由都不满足时再只按当前带宽判断
+        RouteInfo selectedRoute = serverRoutes.getStrategy().select(serverRoutes, playerId,
+                candidate -> hasForecastHeadroom(candidate, estimatedBandwidth) && reserve(candidate, estimatedBandwidth));
+        if (selectedRoute == null) {
+            selectedRoute = serverRoutes.getStrategy().select(serverRoutes, playerId,
+                    candidate -> reserve(candidate, estimatedBandwidth));
         }
-        
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                updateAllRoutesBandwidthUsage();
-            } catch (Exception e) {
-                logger.error("更新路由带宽使用情况时发生错误", e);
+        if (selectedRoute != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("为玩家 {} 选择路由: {} (优先级: {}, 预计带宽使用率: {}%{})", 
+                        playerId, selectedRoute.getAddress(), selectedRoute.getPriority(),
+                        String.format("%.1f", selectedRoute.getProjectedBandwidthUtilization()), describeTimeSlot(selectedRoute));
             }
-        }, BANDWIDTH_UPDATE_INTERVAL, BANDWIDTH_UPDATE_INTERVAL, TimeUnit.SECONDS);
+            return selectedRoute;
+        }
         
-        logger.info("带宽监控任务已启动，更新间隔: {}秒", BANDWIDTH_UPDATE_INTERVAL);
+        logger.warn("服务器 {} 没有可用的路由（所有路由都已达到带宽限制）", serverRoutes.getServerName());
+        RouteInfo route = selectFallbackRoute(serverRoutes, playerId);
+        if (route != null) {
+            route.addReservedBandwidth(estimatedBandwidth);
+        }
+        return route;
     }
     
-    private void updateAllRoutesBandwidthUsage() {
-        BandwidthSnapshot globalSnapshot = bandwidthManager.getTotalBandwidthSnapshot();
-        
-        logger.debug("全局带宽统计: {} 玩家, 总下载 {:.2f} KB/s, 总上传 {:.2f} KB/s", 
-                globalSnapshot.getTrackedPlayerCount(),
-                globalSnapshot.getTotalDownloadSpeed() / 1024.0,
-                globalSnapshot.getTotalUploadSpeed() / 1024.0);
-        
-        proxyServer.getAllPlayers().forEach(player -> {
-            Optional<PlayerBandwidthStats> statsOpt = bandwidthManager.getPlayerBandwidthStats(player);
-            if (statsOpt.isPresent()) {
-                PlayerBandwidthStats stats = statsOpt.get();
-                updatePlayerBandwidthUsage(player, stats);
-            }
-        });
+    private static boolean reserve(RouteInfo candidate, double estimatedBandwidth) {
+        double capacity = candidate.isCurrentlyBandwidthLimited()
+                ? candidate.getCurrentBandwidthLimit() * BANDWIDTH_THRESHOLD : -1;
+        return candidate.tryReserveBandwidth(estimatedBandwidth, capacity);
     }
     
-    private void updatePlayerBandwidthUsage(Player player, PlayerBandwidthStats stats) {
-        if (player.getCurrentServer().isPresent()) {
-            String serverName = player.getCurrentServer().get().getServerInfo().getName();
-            
-            double totalPlayerBandwidth = stats.getDownloadSpeed() + stats.getUploadSpeed();
-            if (totalPlayerBandwidth > 0) {
-                logger.debug("玩家 {} (服务器: {}) 当前带宽: 下载 {:.2f} KB/s, 上传 {:.2f} KB/s, 总计 {:.2f} KB/s", 
-                        player.getUsername(), 
-                        serverName,
-                        stats.getDownloadSpeed() / 1024.0,
-                        stats.getUploadSpeed() / 1024.0,
-                        totalPlayerBandwidth / 1024.0);
-            }
-        }
+    /**
+     * 当前的预留加上新连接的估算带宽是否仍在预测余量之内
+     */
+    private static boolean hasForecastHeadroom(RouteInfo candidate, double estimatedBandwidth) {
+        return candidate.getReservedBandwidth() + estimatedBandwidth <= candidate.getForecastHeadroom();
     }
     
-    public void removePlayerFromRoute(UUID playerId, RouteInfo route) {
+    private RouteInfo selectFallbackRoute(RoutingTable.ServerRoutes serverRoutes, UUID playerId) {
+        // 所有路由都已超过阈值，选择预计带宽使用率最低的，使用率相同时按优先级
+        RouteInfo route = null;
+        double lowestUtilization = Double.MAX_VALUE;
+        RouteInfo[] candidates = serverRoutes.candidates;
+        for (int i = 0; i < candidates.length; i++) {
+            RouteInfo candidate = candidates[i];
+            double utilization = candidate.getProjectedBandwidthUtilization();
+            if (utilization < lowestUtilization) {
+                route = candidate;
+                lowestUtilization = utilization;
+            }
+        }
+        
         if (route != null) {
-            route.removeConnectedPlayer(playerId);
-            logger.debug("从路由 {} 移除玩家 {}", route.getAddress(), playerId);
+            route.recordFallback();
+            logger.warn("使用fallback路由为玩家 {} 选择: {} (预计带宽使用率: {}%{})", 
+                    playerId, route.getAddress(),
+                    String.format("%.1f", route.getProjectedBandwidthUtilization()), describeTimeSlot(route));
         }
+        return route;
     }
     
-    public void shutdown() {
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
+    private String describeTimeSlot(RouteInfo route) {
+        if (route.getBandwidthSchedule() != null && route.getBandwidthSchedule().hasTimeSlots()) {
+            BandwidthTimeSlot currentSlot = route.getCurrentTimeSlot();
+            if (currentSlot != null) {
+                return String.format(" [时间段: %s-%s]", currentSlot.getStartTime(), currentSlot.getEndTime());
             }
+            return " [默认带宽]";
         }
-        logger.info("带宽感知路由选择器已关闭");
-    }
-    
-    public double getBandwidthThreshold() {
-        return BANDWIDTH_THRESHOLD;
-    }
-    
-    public long getBandwidthUpdateInterval() {
-        return BANDWIDTH_UPDATE_INTERVAL;
+        return "";
     }
     
-    public BandwidthManager getBandwidthManager() {
-        return bandwidthManager;
-    }
-    
-    /**
-     * 确保带宽数据是最新的，如果数据过时则立即更新
-     */
-    private void ensureFreshBandwidthData(ServerConfig serverConfig) {
-        boolean needsUpdate = false;
-        long currentTime = System.currentTimeMillis();
-        
-        for (RouteInfo route : serverConfig.getRoutes()) {
-            if (route.isBandwidthLimited()) {
-                long lastUpdate = route.getLastBandwidthUpdate();
-                if (lastUpdate == 0 || (currentTime - lastUpdate) > BANDWIDTH_DATA_MAX_AGE) {
-                    needsUpdate = true;
-                    logger.debug("路由 {} 带宽数据过时，需要更新 (上次更新: {}ms前)", 
-                            route.getAddress(), 
-                            lastUpdate == 0 ? "从未" : String.valueOf(currentTime - lastUpdate));
-                    break;
-                }
-            }
+    private boolean isBandwidthAvailableForNewConnection(RouteInfo route) {
+        if (!route.isCurrentlyBandwidthLimited()) {
+            return true;
         }
         
-        if (needsUpdate) {
-            logger.debug("执行即时带宽数据更新");
-            updateAllRoutesBandwidthUsage();
-        }
+        double utilizationRate = route.getProjectedBandwidthUtilization() / 100.0;
+        return utilizationRate < BANDWIDTH_THRESHOLD;
+    }
+    
+    public double getBandwidthThreshold() {
+        return BANDWIDTH_THRESHOLD;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package net.rms.xrain.velocityass.service;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.player.BandwidthManager;
+import org.slf4j.Logger;
+
+/**
+ * 唯一的带宽采集入口：每个周期调用一次 getAllPlayerBandwidthStats()，生成新的 BandwidthTable 并原子发布。
+ * 其他组件只读取最近一次的表，不直接轮询 BandwidthManager。
+ */
+public class BandwidthCollector {
+
+    public static final long COLLECT_INTERVAL_SECONDS = 5;
+    // 超过该时间未采集则视为数据过时
+    public static final long MAX_DATA_AGE_MILLIS = 10_000;
+
+    private final BandwidthManager bandwidthManager;
+    private final Logger logger;
+    private volatile BandwidthTable table;
+    private volatile double peakDownloadSpeed;
+    private volatile double peakUploadSpeed;
+
+    public BandwidthCollector(ProxyServer proxyServer, Logger logger) {
+        this.bandwidthManager = proxyServer.getBandwidthManager();
+        this.logger = logger;
+        this.table = BandwidthTable.empty();
+    }
+
+    public synchronized BandwidthTable collect() {
+        BandwidthTable collected = BandwidthTable.of(bandwidthManager.getAllPlayerBandwidthStats(), System.currentTimeMillis());
+        peakDownloadSpeed = Math.max(peakDownloadSpeed, collected.getTotalDownloadSpeed());
+        peakUploadSpeed = Math.max(peakUploadSpeed, collected.getTotalUploadSpeed());
+        table = collected;
+
+        logger.debug("全局带宽统计: {} 玩家, 总下载 {} KB/s, 总上传 {} KB/s",
+                collected.size(),
+                String.format("%.2f", collected.getTotalDownloadSpeed() / 1024.0),
+                String.format("%.2f", collected.getTotalUploadSpeed() / 1024.0));
+        return collected;
+    }
+
+    public BandwidthTable getTable() {
+        return table;
+    }
+
+    public boolean isStale() {
+        return System.currentTimeMillis() - table.getCollectedAt() > MAX_DATA_AGE_MILLIS;
+    }
+
+    public double getPeakDownloadSpeed() {
+        return peakDownloadSpeed;
+    }
+
+    public double getPeakUploadSpeed() {
+        return peakUploadSpeed;
+    }
+
+    public BandwidthManager getBandwidthManager() {
+        return bandwidthManager;
+    }
+}
@@ -0,0 +1,69 @@
+package net.rms.xrain.velocityass.service;
+
+import net.rms.xrain.velocityass.config.RouteHistory;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.ServerConfig;
+import org.slf4j.Logger;
+
+import java.time.LocalTime;
+import java.util.Collection;
+
+/**
+ * 按时段预测路由未来几分钟的带宽，在路由真正超过阈值之前就把新连接引导到其他路由。
+ * 每条路由从历史记录中学习每天各分钟的典型带宽，预测值 = 当前实测带宽 + 曲线在未来各分钟相对当前分钟的增量，
+ * 与分时段带宽表在对应分钟生效的限制比较，得到预测窗口内仍可分配给新连接的带宽余量。
+ * 即使还没有学习到曲线，时间段切换导致的限制下降也会反映在余量中。
+ */
+public class BandwidthForecaster {
+
+    public static final int HORIZON_MINUTES = 10;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final Logger logger;
+    private final double threshold;
+
+    public BandwidthForecaster(Logger logger, double threshold) {
+        this.logger = logger;
+        this.threshold = threshold;
+    }
+
+    public void update(Collection<ServerConfig> serverConfigs) {
+        LocalTime now = LocalTime.now();
+        for (ServerConfig serverConfig : serverConfigs) {
+            for (RouteInfo route : serverConfig.getRoutes()) {
+                double headroom = computeHeadroom(route, now);
+                if (headroom < 0 && route.getForecastHeadroom() >= 0) {
+                    logger.debug("路由 {} -> {} 预计在 {} 分钟内达到带宽阈值，新连接将优先分配到其他路由",
+                            serverConfig.getServerName(), route.getAddress(), HORIZON_MINUTES);
+                }
+                route.setForecastHeadroom(headroom);
+            }
+        }
+    }
+
+    /**
+     * 预测窗口内每分钟的 (限制 × 阈值 - 预测带宽) 的最小值，没有带宽限制时返回正无穷
+     */
+    private double computeHeadroom(RouteInfo route, LocalTime now) {
+        if (!route.isCurrentlyBandwidthLimited()) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        RouteHistory history = route.getHistory();
+        int currentMinute = now.getHour() * 60 + now.getMinute();
+        float baseline = history.getProfileUsage(currentMinute);
+        double current = route.getCurrentBandwidthUsage();
+        double headroom = Double.POSITIVE_INFINITY;
+
+        for (int offset = 1; offset <= HORIZON_MINUTES; offset++) {
+            long limit = route.getBandwidthLimitAt(now.plusMinutes(offset));
+            if (limit <= 0) {
+                continue;
+            }
+            float expected = history.getProfileUsage((currentMinute + offset) % MINUTES_PER_DAY);
+            double growth = Float.isNaN(baseline) || Float.isNaN(expected) ? 0.0 : Math.max(0.0, expected - baseline);
+            headroom = Math.min(headroom, limit * threshold - (current + growth));
+        }
+        return headroom;
+    }
+}
@@ -0,0 +1,150 @@
+package net.rms.xrain.velocityass.service;
+
+import com.velocitypowered.api.proxy.player.PlayerBandwidthStats;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一次采集得到的所有玩家带宽数据，按列存放在定长数组中，构建后不再修改。
+ * 路由带宽汇总和命令输出都从同一张表读取，不再各自遍历 BandwidthManager。
+ */
+public final class BandwidthTable {
+
+    private static final BandwidthTable EMPTY = new BandwidthTable(0, 0);
+
+    private final Map<UUID, Integer> indexByPlayer;
+    private final UUID[] playerIds;
+    private final String[] usernames;
+    private final String[] serverNames;
+    private final double[] downloadSpeeds;
+    private final double[] uploadSpeeds;
+    private final long[] bytesReceived;
+    private final long[] bytesSent;
+    private final long collectedAt;
+    private double totalDownloadSpeed;
+    private double totalUploadSpeed;
+
+    private BandwidthTable(int size, long collectedAt) {
+        this.indexByPlayer = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+        this.playerIds = new UUID[size];
+        this.usernames = new String[size];
+        this.serverNames = new String[size];
+        this.downloadSpeeds = new double[size];
+        this.uploadSpeeds = new double[size];
+        this.bytesReceived = new long[size];
+        this.bytesSent = new long[size];
+        this.collectedAt = collectedAt;
+    }
+
+    public static BandwidthTable empty() {
+        return EMPTY;
+    }
+
+    static BandwidthTable of(Collection<PlayerBandwidthStats> allStats, long collectedAt) {
+        BandwidthTable table = new BandwidthTable(allStats.size(), collectedAt);
+        int index = 0;
+        for (PlayerBandwidthStats stats : allStats) {
+            if (index == table.playerIds.length) {
+                // 采集期间集合有新增，多出的玩家留到下一次采集
+                break;
+            }
+            UUID playerId = stats.getPlayerUuid();
+            if (playerId == null || table.indexByPlayer.putIfAbsent(playerId, index) != null) {
+                continue;
+            }
+            table.playerIds[index] = playerId;
+            table.usernames[index] = stats.getPlayerUsername();
+            table.serverNames[index] = stats.getCurrentServerName();
+            table.downloadSpeeds[index] = stats.getDownloadSpeed();
+            table.uploadSpeeds[index] = stats.getUploadSpeed();
+            table.bytesReceived[index] = stats.getTotalBytesReceived();
+            table.bytesSent[index] = stats.getTotalBytesSent();
+            table.totalDownloadSpeed += table.downloadSpeeds[index];
+            table.totalUploadSpeed += table.uploadSpeeds[index];
+            index++;
+        }
+        return index == table.playerIds.length ? table : table.truncate(index);
+    }
+
+    private BandwidthTable truncate(int size) {
+        BandwidthTable table = new BandwidthTable(size, collectedAt);
+        System.arraycopy(playerIds, 0, table.playerIds, 0, size);
+        System.arraycopy(usernames, 0, table.usernames, 0, size);
+        System.arraycopy(serverNames, 0, table.serverNames, 0, size);
+        System.arraycopy(downloadSpeeds, 0, table.downloadSpeeds, 0, size);
+        System.arraycopy(uploadSpeeds, 0, table.uploadSpeeds, 0, size);
+        System.arraycopy(bytesReceived, 0, table.bytesReceived, 0, size);
+        System.arraycopy(bytesSent, 0, table.bytesSent, 0, size);
+        table.indexByPlayer.putAll(indexByPlayer);
+        table.totalDownloadSpeed = totalDownloadSpeed;
+        table.totalUploadSpeed = totalUploadSpeed;
+        return table;
+    }
+
+    public int size() {
+        return playerIds.length;
+    }
+
+    /**
+     * 玩家在表中的下标，不存在时返回 -1
+     */
+    public int indexOf(UUID playerId) {
+        Integer index = indexByPlayer.get(playerId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * 玩家的下载加上传速度 (字节/秒)，没有数据时返回 -1
+     */
+    public double getBandwidth(UUID playerId) {
+        int index = indexOf(playerId);
+        return index >= 0 ? getBandwidth(index) : -1;
+    }
+
+    public double getBandwidth(int index) {
+        return downloadSpeeds[index] + uploadSpeeds[index];
+    }
+
+    public UUID getPlayerId(int index) {
+        return playerIds[index];
+    }
+
+    public String getUsername(int index) {
+        return usernames[index];
+    }
+
+    public String getServerName(int index) {
+        return serverNames[index];
+    }
+
+    public double getDownloadSpeed(int index) {
+        return downloadSpeeds[index];
+    }
+
+    public double getUploadSpeed(int index) {
+        return uploadSpeeds[index];
+    }
+
+    public long getBytesReceived(int index) {
+        return bytesReceived[index];
+    }
+
+    public long getBytesSent(int index) {
+        return bytesSent[index];
+    }
+
+    public double getTotalDownloadSpeed() {
+        return totalDownloadSpeed;
+    }
+
+    public double getTotalUploadSpeed() {
+        return totalUploadSpeed;
+    }
+
+    public long getCollectedAt() {
+        return collectedAt;
+    }
+}
@@ -0,0 +1,74 @@
+package net.rms.xrain.velocityass.service;
+
+import net.rms.xrain.velocityass.config.LatencyHistogram;
+import net.rms.xrain.velocityass.config.RouteInfo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 玩家加入路径各阶段的耗时统计：选路、预连接事件处理、以及从确定路由到后端连接完成。
+ * 每个阶段分别保留全局和按服务器的直方图，后端连接耗时额外记录到对应路由上。
+ */
+public class JoinLatencyRecorder {
+
+    public enum Stage {
+        SELECT("选路"),
+        PRE_CONNECT("预连接事件"),
+        CONNECT("后端连接");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] global;
+    private final Map<String, LatencyHistogram[]> byServer;
+
+    public JoinLatencyRecorder() {
+        this.global = newHistograms();
+        this.byServer = new ConcurrentHashMap<>();
+    }
+
+    public void record(Stage stage, String serverName, long nanos) {
+        global[stage.ordinal()].record(nanos);
+        if (serverName != null) {
+            byServer.computeIfAbsent(serverName, name -> newHistograms())[stage.ordinal()].record(nanos);
+        }
+    }
+
+    public void recordConnect(String serverName, RouteInfo route, long nanos) {
+        record(Stage.CONNECT, serverName, nanos);
+        if (route != null) {
+            route.getConnectLatency().record(nanos);
+        }
+    }
+
+    public LatencyHistogram getGlobal(Stage stage) {
+        return global[stage.ordinal()];
+    }
+
+    /**
+     * 服务器还没有任何记录时返回 null
+     */
+    public LatencyHistogram getServer(String serverName, Stage stage) {
+        LatencyHistogram[] histograms = byServer.get(serverName);
+        return histograms != null ? histograms[stage.ordinal()] : null;
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+}
@@ -0,0 +1,309 @@
+package net.rms.xrain.velocityass.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.rms.xrain.velocityass.config.LatencyStats;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 可选的 Prometheus 文本格式指标接口，使用 JDK 自带的 HttpServer，只提供 /metrics。
+ * 抓取时只读取路由表、路由状态快照和带宽采集器最近一次的结果，不会触发带宽汇总。
+ * 输出直接按字节写入一个复用的缓冲区，数字也手动格式化，抓取过程中基本不产生新对象。
+ */
+public class MetricsServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final Metric[] ROUTE_METRICS = Metric.values();
+
+    private final RouteManager routeManager;
+    private final Logger logger;
+    private final String host;
+    private final int port;
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    // 只在单线程的 executor 中使用
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int length;
+
+    public MetricsServer(RouteManager routeManager, Logger logger, String host, int port) {
+        this.routeManager = routeManager;
+        this.logger = logger;
+        this.host = host;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VelocityASS-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/metrics", this::handle);
+        httpServer.start();
+        logger.info("Prometheus 指标接口已启动: http://{}:{}/metrics", host, port);
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        logger.info("Prometheus 指标接口已关闭");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            render();
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(buffer, 0, length);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("生成 Prometheus 指标失败", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void render() {
+        length = 0;
+        RoutingTable table = routeManager.getRoutingTable();
+        BandwidthTable bandwidth = routeManager.getBandwidthCollector().getTable();
+
+        help("velocityass_bandwidth_tracked_players", "gauge", "Players present in the latest bandwidth collection");
+        sample("velocityass_bandwidth_tracked_players", bandwidth.size());
+        help("velocityass_bandwidth_download_bytes_per_second", "gauge", "Total download speed of all players");
+        sample("velocityass_bandwidth_download_bytes_per_second", bandwidth.getTotalDownloadSpeed());
+        help("velocityass_bandwidth_upload_bytes_per_second", "gauge", "Total upload speed of all players");
+        sample("velocityass_bandwidth_upload_bytes_per_second", bandwidth.getTotalUploadSpeed());
+        help("velocityass_bandwidth_collected_timestamp_seconds", "gauge", "Time of the latest bandwidth collection");
+        sample("velocityass_bandwidth_collected_timestamp_seconds", bandwidth.getCollectedAt() / 1000.0);
+        help("velocityass_redirects_total", "counter", "Player connections redirected to a route");
+        sample("velocityass_redirects_total", routeManager.getRedirectCount());
+
+        for (Metric metric : ROUTE_METRICS) {
+            help(metric.name, metric.type, metric.description);
+            forEachRoute(table, metric);
+        }
+    }
+
+    private enum Metric {
+        ENABLED("velocityass_route_enabled", "gauge", "Whether the route is enabled in the config"),
+        AVAILABLE("velocityass_route_available", "gauge", "Whether the latest probe succeeded"),
+        USAGE("velocityass_route_bandwidth_usage_bytes_per_second", "gauge", "Measured bandwidth of players on the route"),
+        RESERVED("velocityass_route_bandwidth_reserved_bytes_per_second", "gauge", "Bandwidth reserved for players that just joined"),
+        LIMIT("velocityass_route_bandwidth_limit_bytes_per_second", "gauge", "Bandwidth limit currently in force, 0 when unlimited"),
+        UTILIZATION("velocityass_route_bandwidth_utilization_ratio", "gauge", "Measured usage divided by the current limit"),
+        PLAYERS("velocityass_route_connected_players", "gauge", "Players currently assigned to the route"),
+        LATENCY_EWMA("velocityass_route_latency_milliseconds", "gauge", "Smoothed probe latency"),
+        LATENCY_P95("velocityass_route_latency_p95_milliseconds", "gauge", "95th percentile of recent probe latency"),
+        PROBES("velocityass_route_probes_total", "counter", "Probes completed for the route"),
+        PROBE_FAILURES("velocityass_route_probe_failures_total", "counter", "Probes that failed for the route"),
+        SELECTIONS("velocityass_route_selections_total", "counter", "Players assigned to the route"),
+        FALLBACKS("velocityass_route_fallbacks_total", "counter", "Assignments made because every route was over the threshold");
+
+        private final String name;
+        private final String type;
+        private final String description;
+
+        Metric(String name, String type, String description) {
+            this.name = name;
+            this.type = type;
+            this.description = description;
+        }
+    }
+
+    private void forEachRoute(RoutingTable table, Metric metric) {
+        for (int s = 0, servers = table.getServerCount(); s < servers; s++) {
+            RoutingTable.ServerRoutes serverRoutes = table.getServer(s);
+            for (int r = 0, routes = serverRoutes.getRouteCount(); r < routes; r++) {
+                RouteInfo route = serverRoutes.getRoute(r);
+                double value = value(route, metric);
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                ascii(metric.name);
+                ascii("{server=\"");
+                label(serverRoutes.getServerName());
+                ascii("\",route=\"");
+                label(route.getAddress());
+                ascii("\"} ");
+                number(value);
+                newline();
+            }
+        }
+    }
+
+    private static double value(RouteInfo route, Metric metric) {
+        switch (metric) {
+            case ENABLED:
+                return route.isEnabled() ? 1 : 0;
+            case AVAILABLE:
+                return route.getState().isAvailable() ? 1 : 0;
+            case USAGE:
+                return route.getState().getBandwidthUsage();
+            case RESERVED:
+                return route.getState().getReservedBandwidth();
+            case LIMIT:
+                return route.isCurrentlyBandwidthLimited() ? route.getCurrentBandwidthLimit() : 0;
+            case UTILIZATION:
+                long limit = route.isCurrentlyBandwidthLimited() ? route.getCurrentBandwidthLimit() : 0;
+                return limit > 0 ? route.getState().getBandwidthUsage() / limit : Double.NaN;
+            case PLAYERS:
+                return route.getConnectedPlayerCount();
+            case LATENCY_EWMA:
+                double ping = route.getSmoothedPing();
+                return ping > 0 ? ping : Double.NaN;
+            case LATENCY_P95:
+                LatencyStats latency = route.getLatencyStats();
+                return latency.hasSamples() ? latency.getP95Millis() : Double.NaN;
+            case PROBES:
+                return route.getProbeCount();
+            case PROBE_FAILURES:
+                return route.getProbeFailureCount();
+            case SELECTIONS:
+                return route.getSelectionCount();
+            case FALLBACKS:
+                return route.getFallbackCount();
+            default:
+                return Double.NaN;
+        }
+    }
+
+    private void help(String name, String type, String description) {
+        ascii("# HELP ");
+        ascii(name);
+        put((byte) ' ');
+        ascii(description);
+        newline();
+        ascii("# TYPE ");
+        ascii(name);
+        put((byte) ' ');
+        ascii(type);
+        newline();
+    }
+
+    private void sample(String name, double value) {
+        ascii(name);
+        put((byte) ' ');
+        number(value);
+        newline();
+    }
+
+    private void newline() {
+        put((byte) '\n');
+    }
+
+    private void put(byte b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = b;
+    }
+
+    private void ascii(String text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * 按 UTF-8 写入标签值，并按文本格式的要求转义反斜杠、双引号和换行
+     */
+    private void label(String text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' || c == '"') {
+                put((byte) '\\');
+                put((byte) c);
+            } else if (c == '\n') {
+                put((byte) '\\');
+                put((byte) 'n');
+            } else if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                put((byte) (0xF0 | (codePoint >> 18)));
+                put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * 整数直接输出，其余最多保留三位小数
+     */
+    private void number(double value) {
+        if (Double.isNaN(value)) {
+            ascii("NaN");
+            return;
+        }
+        if (Double.isInfinite(value)) {
+            ascii(value > 0 ? "+Inf" : "-Inf");
+            return;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        if (value >= 1e15) {
+            digits((long) value);
+            return;
+        }
+        long scaled = Math.round(value * 1000.0);
+        digits(scaled / 1000);
+        long fraction = scaled % 1000;
+        if (fraction != 0) {
+            put((byte) '.');
+            put((byte) ('0' + fraction / 100));
+            if (fraction % 100 != 0) {
+                put((byte) ('0' + fraction / 10 % 10));
+                if (fraction % 10 != 0) {
+                    put((byte) ('0' + fraction % 10));
+                }
+            }
+        }
+    }
+
+    private void digits(long value) {
+        if (value >= 10) {
+            digits(value / 10);
+        }
+        put((byte) ('0' + value % 10));
+    }
+}
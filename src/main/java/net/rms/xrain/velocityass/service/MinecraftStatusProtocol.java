@@ -0,0 +1,205 @@
+package net.rms.xrain.velocityass.service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minecraft Server List Ping 协议的编解码工具，只实现探测所需的握手、状态请求和 ping/pong 数据包
+ */
+public final class MinecraftStatusProtocol {
+
+    public static final int HANDSHAKE_PACKET_ID = 0x00;
+    public static final int STATUS_PACKET_ID = 0x00;
+    public static final int PING_PACKET_ID = 0x01;
+    public static final int STATUS_NEXT_STATE = 1;
+    public static final int UNKNOWN_PROTOCOL_VERSION = -1;
+
+    private MinecraftStatusProtocol() {
+    }
+
+    /**
+     * 编码握手包和紧随其后的状态请求包
+     */
+    public static ByteBuffer encodeStatusRequest(String host, int port) {
+        byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+        int handshakeBodyLength = varIntSize(HANDSHAKE_PACKET_ID)
+                + varIntSize(UNKNOWN_PROTOCOL_VERSION)
+                + varIntSize(hostBytes.length) + hostBytes.length
+                + 2
+                + varIntSize(STATUS_NEXT_STATE);
+        int statusBodyLength = varIntSize(STATUS_PACKET_ID);
+
+        ByteBuffer buffer = ByteBuffer.allocate(varIntSize(handshakeBodyLength) + handshakeBodyLength
+                + varIntSize(statusBodyLength) + statusBodyLength);
+        writeVarInt(buffer, handshakeBodyLength);
+        writeVarInt(buffer, HANDSHAKE_PACKET_ID);
+        writeVarInt(buffer, UNKNOWN_PROTOCOL_VERSION);
+        writeVarInt(buffer, hostBytes.length);
+        buffer.put(hostBytes);
+        buffer.putShort((short) port);
+        writeVarInt(buffer, STATUS_NEXT_STATE);
+
+        writeVarInt(buffer, statusBodyLength);
+        writeVarInt(buffer, STATUS_PACKET_ID);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer encodePing(long payload) {
+        int bodyLength = varIntSize(PING_PACKET_ID) + Long.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(varIntSize(bodyLength) + bodyLength);
+        writeVarInt(buffer, bodyLength);
+        writeVarInt(buffer, PING_PACKET_ID);
+        buffer.putLong(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 尝试从处于读模式的缓冲区中取出一个完整的数据包。
+     * 数据不足时返回 -1 且不移动缓冲区位置，否则返回数据包长度，缓冲区位置停在包体开头。
+     */
+    public static int readPacketLength(ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            int length = readVarInt(buffer);
+            if (length < 0 || buffer.remaining() < length) {
+                buffer.position(start);
+                return -1;
+            }
+            return length;
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            return -1;
+        }
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("字符串长度无效: " + length);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * 从状态响应 JSON 中提取顶层 players 对象的 online 和 max 字段，未找到时返回 -1。
+     * 按括号深度扫描，只匹配 players 对象第一层的键，sample 等嵌套内容和字符串中的同名文本都会被跳过
+     */
+    public static int[] parsePlayerCounts(String json) {
+        int[] counts = {-1, -1};
+        int length = json.length();
+        int depth = 0;
+        int playersDepth = -1;
+        int i = 0;
+        while (i < length) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                int end = skipString(json, i);
+                int colon = skipWhitespace(json, end);
+                if (colon >= length || json.charAt(colon) != ':') {
+                    i = end;
+                    continue;
+                }
+                int value = skipWhitespace(json, colon + 1);
+                if (playersDepth < 0 && depth == 1 && isKey(json, i, end, "players")
+                        && value < length && json.charAt(value) == '{') {
+                    playersDepth = ++depth;
+                    i = value + 1;
+                    continue;
+                }
+                if (depth == playersDepth) {
+                    if (isKey(json, i, end, "online")) {
+                        counts[0] = readInt(json, value);
+                    } else if (isKey(json, i, end, "max")) {
+                        counts[1] = readInt(json, value);
+                    }
+                }
+                i = value;
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == playersDepth) {
+                    break;
+                }
+                depth--;
+            }
+            i++;
+        }
+        return counts;
+    }
+
+    /**
+     * start 为字符串开头的引号，返回结尾引号之后的位置
+     */
+    private static int skipString(String json, int start) {
+        int i = start + 1;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return json.length();
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isKey(String json, int start, int end, String key) {
+        return end - start - 2 == key.length() && json.startsWith(key, start + 1);
+    }
+
+    private static int readInt(String json, int i) {
+        int value = 0;
+        boolean found = false;
+        while (i < json.length() && Character.isDigit(json.charAt(i))) {
+            value = value * 10 + (json.charAt(i) - '0');
+            found = true;
+            i++;
+        }
+        return found ? value : -1;
+    }
+
+    public static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarInt 过长");
+    }
+
+    public static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
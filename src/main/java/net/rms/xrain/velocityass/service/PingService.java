@@ -1,27 +1,53 @@
 package net.rms.xrain.velocityass.service;
 
+import net.rms.xrain.velocityass.config.ProbeMode;
 import net.rms.xrain.velocityass.config.RouteInfo;
 import net.rms.xrain.velocityass.config.ServerConfig;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 public class PingService {
+    private static final long RECONCILE_INTERVAL_SECONDS = 5;
+    private static final long INITIAL_PROBE_SPREAD_MILLIS = 2000;
+    private static final long FAILURE_RETRY_MILLIS = 2000;
+    private static final int MAX_STABLE_STEPS = 4;
+    private static final long LATENCY_CHANGE_MIN_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final double JITTER_RATIO = 0.1;
+    private static final long RESOLVE_CACHE_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final int RESOLVER_THREADS = 2;
+    
     private final RouteManager routeManager;
     private final Logger logger;
     private final ScheduledExecutorService executorService;
-    private boolean running;
+    private final ExecutorService resolverExecutor;
+    private final ProbeEngine probeEngine;
+    private final Map<RouteInfo, ProbeState> probeStates;
+    private final Map<RouteInfo, ResolvedAddress> resolvedAddresses;
+    private volatile boolean running;
     
-    public PingService(RouteManager routeManager, Logger logger) {
+    public PingService(RouteManager routeManager, Logger logger) throws IOException {
         this.routeManager = routeManager;
         this.logger = logger;
-        this.executorService = Executors.newScheduledThreadPool(4);
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.resolverExecutor = Executors.newFixedThreadPool(RESOLVER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "VelocityASS-Resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.probeEngine = new ProbeEngine(logger);
+        this.probeStates = new ConcurrentHashMap<>();
+        this.resolvedAddresses = new ConcurrentHashMap<>();
         this.running = false;
     }
     
@@ -33,9 +59,8 @@ public class PingService {
         running = true;
         logger.info("启动延迟检测服务");
         
-        schedulePingTasks();
-        
-        executorService.scheduleWithFixedDelay(this::schedulePingTasks, 30, 30, TimeUnit.SECONDS);
+        probeEngine.start();
+        executorService.scheduleWithFixedDelay(this::reconcileProbeSchedules, 0, RECONCILE_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
     
     public void stopPingTask() {
@@ -55,73 +80,229 @@ public class PingService {
             executorService.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        
+        resolverExecutor.shutdownNow();
+        probeEngine.shutdown();
+        probeStates.clear();
+        resolvedAddresses.clear();
     }
     
-    private void schedulePingTasks() {
-        for (ServerConfig serverConfig : routeManager.getAllServerConfigs().values()) {
-            for (RouteInfo route : serverConfig.getRoutes()) {
-                if (route.isEnabled()) {
-                    CompletableFuture.supplyAsync(() -> pingRoute(route, serverConfig.getPingTimeout()), executorService)
-                            .thenAccept(result -> {
-                                routeManager.updateRouteStatus(
-                                        serverConfig.getServerName(),
-                                        route.getAddress(),
-                                        result.available,
-                                        result.ping
-                                );
-                                
-                                if (result.available) {
-                                    logger.debug("Ping {} -> {}ms", route.getAddress(), result.ping);
-                                } else {
-                                    logger.debug("Ping {} -> 失败", route.getAddress());
-                                }
-                            })
-                            .exceptionally(throwable -> {
-                                logger.debug("Ping {} 异常: {}", route.getAddress(), throwable.getMessage());
-                                routeManager.updateRouteStatus(
-                                        serverConfig.getServerName(),
-                                        route.getAddress(),
-                                        false,
-                                        -1
-                                );
-                                return null;
-                            });
+    /**
+     * 为尚未调度的已启用路由启动探测链，配置重载新增的路由也会在这里被接管
+     */
+    private void reconcileProbeSchedules() {
+        try {
+            for (ServerConfig serverConfig : routeManager.getAllServerConfigs().values()) {
+                for (RouteInfo route : serverConfig.getRoutes()) {
+                    if (route.isEnabled() && probeStates.putIfAbsent(route, new ProbeState()) == null) {
+                        long initialDelay = ThreadLocalRandom.current().nextLong(INITIAL_PROBE_SPREAD_MILLIS);
+                        scheduleProbe(serverConfig.getServerName(), route, initialDelay);
+                    }
                 }
             }
+        } catch (Exception e) {
+            logger.error("调度延迟检测任务时发生错误", e);
         }
     }
     
-    private PingResult pingRoute(RouteInfo route, int timeoutMs) {
-        String host = route.getHost();
-        int port = route.getPort();
-        
-        long startTime = System.currentTimeMillis();
+    private void scheduleProbe(String serverName, RouteInfo route, long delayMillis) {
+        if (!running) {
+            return;
+        }
+        try {
+            executorService.schedule(() -> runProbe(serverName, route), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            probeStates.remove(route);
+        }
+    }
+    
+    private void runProbe(String serverName, RouteInfo route) {
+        ServerConfig serverConfig = routeManager.getConfigManager().getSnapshot().getServerConfig(serverName);
+        if (serverConfig == null || !route.isEnabled() || routeManager.findRoute(serverName, route.getAddress()) != route) {
+            // 路由已被移除或禁用，结束该路由的探测链
+            probeStates.remove(route);
+            resolvedAddresses.remove(route);
+            return;
+        }
         
-        try (Socket socket = new Socket()) {
-            socket.connect(new InetSocketAddress(host, port), timeoutMs);
-            long ping = System.currentTimeMillis() - startTime;
-            return new PingResult(true, ping);
-        } catch (IOException e) {
-            return new PingResult(false, -1);
+        ProbeState state = probeStates.get(route);
+        if (state == null) {
+            return;
         }
+        
+        // 结果回到探测调度线程处理，不占用探测引擎的 Selector 线程
+        pingRouteAsync(route, serverConfig.getPingTimeout(), serverConfig.getProbeMode())
+                .whenCompleteAsync((result, throwable) -> {
+                    PingResult pingResult = result;
+                    if (throwable != null) {
+                        logger.debug("Ping {} 异常: {}", route.getAddress(), throwable.getMessage());
+                        pingResult = PingResult.failed();
+                    } else if (result.available) {
+                        logger.debug("Ping {} -> {}", route.getAddress(), result);
+                    } else {
+                        logger.debug("Ping {} -> 失败", route.getAddress());
+                    }
+                    
+                    try {
+                        routeManager.updateRouteStatus(serverName, route.getAddress(), pingResult);
+                    } catch (Exception e) {
+                        logger.error("更新路由 {} 状态时发生错误", route.getAddress(), e);
+                    }
+                    
+                    // 探测期间配置可能已重新加载，按最新配置计算下一次探测的间隔
+                    ServerConfig currentConfig = routeManager.getConfigManager().getSnapshot().getServerConfig(serverName);
+                    int pingInterval = (currentConfig != null ? currentConfig : serverConfig).getPingInterval();
+                    long baseMillis = TimeUnit.SECONDS.toMillis(Math.max(1, pingInterval));
+                    scheduleProbe(serverName, route, state.nextDelayMillis(baseMillis, pingResult));
+                }, executorService);
     }
     
     public CompletableFuture<PingResult> pingRouteAsync(RouteInfo route, int timeoutMs) {
-        return CompletableFuture.supplyAsync(() -> pingRoute(route, timeoutMs), executorService);
+        return pingRouteAsync(route, timeoutMs, ProbeMode.TCP);
+    }
+    
+    /**
+     * 地址解析结果缓存 RESOLVE_CACHE_MILLIS，过期后在解析线程中重新解析，不阻塞探测调度线程
+     */
+    public CompletableFuture<PingResult> pingRouteAsync(RouteInfo route, int timeoutMs, ProbeMode mode) {
+        ResolvedAddress cached = resolvedAddresses.get(route);
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            return probeEngine.probe(cached.address, timeoutMs, mode);
+        }
+        
+        CompletableFuture<InetSocketAddress> resolved;
+        try {
+            resolved = CompletableFuture.supplyAsync(() -> resolve(route), resolverExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(PingResult.failed());
+        }
+        return resolved.thenCompose(address -> address != null
+                ? probeEngine.probe(address, timeoutMs, mode)
+                : CompletableFuture.completedFuture(PingResult.failed()));
+    }
+    
+    private InetSocketAddress resolve(RouteInfo route) {
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress(route.getHost(), route.getPort());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (address.isUnresolved()) {
+            // 解析失败不缓存，下一次探测重新解析
+            resolvedAddresses.remove(route);
+            logger.debug("无法解析路由地址: {}", route.getAddress());
+            return null;
+        }
+        if (probeStates.containsKey(route)) {
+            // 解析期间路由可能已被移除，只为仍在探测的路由缓存
+            resolvedAddresses.put(route, new ResolvedAddress(address, System.currentTimeMillis() + RESOLVE_CACHE_MILLIS));
+        }
+        return address;
+    }
+    
+    public ProbeEngine getProbeEngine() {
+        return probeEngine;
+    }
+    
+    private static class ResolvedAddress {
+        private final InetSocketAddress address;
+        private final long expiresAtMillis;
+        
+        private ResolvedAddress(InetSocketAddress address, long expiresAtMillis) {
+            this.address = address;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+        
+        private boolean isExpired(long nowMillis) {
+            return nowMillis >= expiresAtMillis;
+        }
+    }
+    
+    /**
+     * 单条路由的自适应探测状态：失败或延迟突变后加快探测，连续稳定时逐步放慢到配置间隔的两倍
+     */
+    private static class ProbeState {
+        private int consecutiveFailures;
+        private int stableSteps;
+        private long lastRttNanos = -1;
+        
+        private synchronized long nextDelayMillis(long baseMillis, PingResult result) {
+            long delay;
+            if (!result.available) {
+                consecutiveFailures++;
+                stableSteps = 0;
+                delay = Math.min(baseMillis, FAILURE_RETRY_MILLIS << Math.min(consecutiveFailures - 1, 5));
+            } else {
+                boolean recovered = consecutiveFailures > 0;
+                boolean latencyShifted = lastRttNanos > 0 && Math.abs(result.rttNanos - lastRttNanos)
+                        > Math.max(LATENCY_CHANGE_MIN_NANOS, lastRttNanos / 2);
+                consecutiveFailures = 0;
+                lastRttNanos = result.rttNanos;
+                
+                if (recovered || latencyShifted) {
+                    stableSteps = 0;
+                    delay = Math.max(FAILURE_RETRY_MILLIS, baseMillis / 4);
+                } else {
+                    stableSteps = Math.min(stableSteps + 1, MAX_STABLE_STEPS);
+                    delay = baseMillis + baseMillis * stableSteps / MAX_STABLE_STEPS;
+                }
+            }
+            
+            double jitter = 1.0 + ThreadLocalRandom.current().nextDouble(-JITTER_RATIO, JITTER_RATIO);
+            return Math.max(1, (long) (delay * jitter));
+        }
     }
     
     public static class PingResult {
         public final boolean available;
         public final long ping;
+        public final long rttNanos;
+        public final int onlinePlayers;
+        public final int maxPlayers;
         
         public PingResult(boolean available, long ping) {
+            this(available, ping, available ? TimeUnit.MILLISECONDS.toNanos(ping) : -1, -1, -1);
+        }
+        
+        private PingResult(boolean available, long ping, long rttNanos, int onlinePlayers, int maxPlayers) {
             this.available = available;
             this.ping = ping;
+            this.rttNanos = rttNanos;
+            this.onlinePlayers = onlinePlayers;
+            this.maxPlayers = maxPlayers;
+        }
+        
+        /**
+         * 以纳秒精度的往返时间创建成功结果，毫秒值向上取整以免亚毫秒延迟被当作未测量
+         */
+        public static PingResult success(long rttNanos) {
+            return success(rttNanos, -1, -1);
+        }
+        
+        public static PingResult success(long rttNanos, int onlinePlayers, int maxPlayers) {
+            long ping = Math.max(1, (rttNanos + 999_999) / 1_000_000);
+            return new PingResult(true, ping, rttNanos, onlinePlayers, maxPlayers);
+        }
+        
+        public static PingResult failed() {
+            return new PingResult(false, -1, -1, -1, -1);
+        }
+        
+        public boolean hasPlayerCounts() {
+            return onlinePlayers >= 0 && maxPlayers >= 0;
+        }
+        
+        public double getRttMillis() {
+            return rttNanos / 1_000_000.0;
         }
         
         @Override
         public String toString() {
-            return available ? ping + "ms" : "不可用";
+            if (available && hasPlayerCounts()) {
+                return String.format("%.3fms (%d/%d)", getRttMillis(), onlinePlayers, maxPlayers);
+            }
+            return available ? String.format("%.3fms", getRttMillis()) : "不可用";
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,340 @@
+package net.rms.xrain.velocityass.service;
+
+import net.rms.xrain.velocityass.config.ProbeMode;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Selector 的非阻塞探测引擎。
+ * 单个线程驱动所有并发的 TCP 连接探测，每个探测有独立的截止时间，延迟使用 System.nanoTime() 计算。
+ * STATUS 模式在连接后继续完成 Server List Ping 交互，以 ping/pong 往返时间作为延迟。
+ */
+public class ProbeEngine {
+
+    private static final int INITIAL_READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_STATUS_RESPONSE_SIZE = 256 * 1024;
+
+    private final Logger logger;
+    private final Selector selector;
+    private final Queue<Probe> pendingProbes;
+    private final PriorityQueue<Probe> deadlines;
+    private final Thread selectorThread;
+    private volatile boolean running;
+
+    public ProbeEngine(Logger logger) throws IOException {
+        this.logger = logger;
+        this.selector = Selector.open();
+        this.pendingProbes = new ConcurrentLinkedQueue<>();
+        this.deadlines = new PriorityQueue<>(Comparator.comparingLong(probe -> probe.deadlineNanos));
+        this.selectorThread = new Thread(this::runLoop, "VelocityASS-Probe");
+        this.selectorThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        selectorThread.start();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 提交一次 TCP 连接探测，地址需在调用线程中完成解析，避免阻塞 Selector 线程
+     */
+    public CompletableFuture<PingService.PingResult> probe(InetSocketAddress address, int timeoutMs) {
+        return probe(address, timeoutMs, ProbeMode.TCP);
+    }
+
+    public CompletableFuture<PingService.PingResult> probe(InetSocketAddress address, int timeoutMs, ProbeMode mode) {
+        CompletableFuture<PingService.PingResult> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("探测引擎未运行"));
+            return future;
+        }
+        if (address.isUnresolved()) {
+            future.complete(PingService.PingResult.failed());
+            return future;
+        }
+
+        pendingProbes.add(new Probe(address, mode, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs), future));
+        if (!running) {
+            // Selector 线程已在检查之后退出，不会再处理队列
+            abortPending();
+            return future;
+        }
+        selector.wakeup();
+        return future;
+    }
+
+    public int getInFlightCount() {
+        return selector.keys().size();
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                registerPendingProbes();
+
+                long timeoutMs = 0;
+                Probe next = deadlines.peek();
+                if (next != null) {
+                    timeoutMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.deadlineNanos - System.nanoTime()));
+                }
+                selector.select(timeoutMs);
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    handleKey(key);
+                }
+
+                expireProbes();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (running) {
+                logger.error("探测引擎异常退出，路由探测将全部失败", e);
+            }
+        } finally {
+            running = false;
+            closeAll();
+        }
+    }
+
+    private void registerPendingProbes() {
+        Probe probe;
+        while ((probe = pendingProbes.poll()) != null) {
+            try {
+                SocketChannel channel = SocketChannel.open();
+                probe.channel = channel;
+                channel.configureBlocking(false);
+                probe.startNanos = System.nanoTime();
+                boolean connected = channel.connect(probe.address);
+                SelectionKey key = channel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT, probe);
+                deadlines.add(probe);
+                if (connected) {
+                    onConnected(key, probe);
+                }
+            } catch (IOException e) {
+                fail(probe);
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        Probe probe = (Probe) key.attachment();
+        if (!key.isValid() || probe.done) {
+            return;
+        }
+
+        try {
+            if (key.isConnectable()) {
+                if (probe.channel.finishConnect()) {
+                    onConnected(key, probe);
+                }
+                return;
+            }
+            if (key.isWritable()) {
+                flushWrites(key, probe);
+            }
+            if (key.isValid() && key.isReadable()) {
+                readResponse(probe);
+            }
+        } catch (IOException | RuntimeException e) {
+            failOrFallback(probe);
+        }
+    }
+
+    private void onConnected(SelectionKey key, Probe probe) throws IOException {
+        if (probe.mode == ProbeMode.TCP) {
+            complete(probe, System.nanoTime() - probe.startNanos);
+            return;
+        }
+
+        probe.stage = Stage.AWAIT_STATUS;
+        probe.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        probe.writeBuffer = MinecraftStatusProtocol.encodeStatusRequest(probe.address.getHostString(), probe.address.getPort());
+        probe.requestSentNanos = System.nanoTime();
+        flushWrites(key, probe);
+    }
+
+    private void flushWrites(SelectionKey key, Probe probe) throws IOException {
+        probe.channel.write(probe.writeBuffer);
+        key.interestOps(probe.writeBuffer.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void readResponse(Probe probe) throws IOException {
+        ByteBuffer buffer = probe.readBuffer;
+        if (!buffer.hasRemaining()) {
+            if (buffer.capacity() >= MAX_STATUS_RESPONSE_SIZE) {
+                throw new IOException("状态响应过大");
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_STATUS_RESPONSE_SIZE));
+            buffer.flip();
+            grown.put(buffer);
+            probe.readBuffer = buffer = grown;
+        }
+
+        int read = probe.channel.read(buffer);
+        long now = System.nanoTime();
+        if (read < 0) {
+            throw new IOException("连接已被对端关闭");
+        }
+
+        buffer.flip();
+        try {
+            int length;
+            while (!probe.done && (length = MinecraftStatusProtocol.readPacketLength(buffer)) >= 0) {
+                int packetEnd = buffer.position() + length;
+                int packetId = MinecraftStatusProtocol.readVarInt(buffer);
+                if (probe.stage == Stage.AWAIT_STATUS && packetId == MinecraftStatusProtocol.STATUS_PACKET_ID) {
+                    probe.statusRttNanos = now - probe.requestSentNanos;
+                    int[] counts = MinecraftStatusProtocol.parsePlayerCounts(MinecraftStatusProtocol.readString(buffer));
+                    probe.onlinePlayers = counts[0];
+                    probe.maxPlayers = counts[1];
+
+                    probe.stage = Stage.AWAIT_PONG;
+                    probe.pingPayload = probe.startNanos;
+                    probe.writeBuffer = MinecraftStatusProtocol.encodePing(probe.pingPayload);
+                    probe.requestSentNanos = System.nanoTime();
+                    flushWrites(probe.channel.keyFor(selector), probe);
+                } else if (probe.stage == Stage.AWAIT_PONG && packetId == MinecraftStatusProtocol.PING_PACKET_ID) {
+                    if (buffer.getLong() != probe.pingPayload) {
+                        throw new IOException("pong 负载不匹配");
+                    }
+                    complete(probe, now - probe.requestSentNanos);
+                } else {
+                    throw new IOException("意外的数据包: 0x" + Integer.toHexString(packetId));
+                }
+                buffer.position(packetEnd);
+            }
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    private void expireProbes() {
+        long now = System.nanoTime();
+        Probe probe;
+        while ((probe = deadlines.peek()) != null && (probe.done || probe.deadlineNanos - now <= 0)) {
+            deadlines.poll();
+            if (!probe.done) {
+                failOrFallback(probe);
+            }
+        }
+    }
+
+    private void failOrFallback(Probe probe) {
+        if (probe.statusRttNanos > 0) {
+            // 已收到状态响应但 ping/pong 未完成，使用状态请求的往返时间
+            complete(probe, probe.statusRttNanos);
+        } else {
+            fail(probe);
+        }
+    }
+
+    private void complete(Probe probe, long rttNanos) {
+        probe.done = true;
+        closeQuietly(probe.channel);
+        probe.future.complete(PingService.PingResult.success(rttNanos, probe.onlinePlayers, probe.maxPlayers));
+    }
+
+    private void fail(Probe probe) {
+        probe.done = true;
+        closeQuietly(probe.channel);
+        probe.future.complete(PingService.PingResult.failed());
+    }
+
+    /**
+     * 引擎停止后以异常结束所有未完成的探测，调用方不会一直等待
+     */
+    private void closeAll() {
+        abortPending();
+        Probe probe;
+        while ((probe = deadlines.poll()) != null) {
+            if (!probe.done) {
+                abort(probe);
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("关闭探测 Selector 失败: {}", e.getMessage());
+        }
+    }
+
+    private void abortPending() {
+        Probe probe;
+        while ((probe = pendingProbes.poll()) != null) {
+            abort(probe);
+        }
+    }
+
+    private void abort(Probe probe) {
+        probe.done = true;
+        closeQuietly(probe.channel);
+        probe.future.completeExceptionally(new IllegalStateException("探测引擎已停止"));
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private enum Stage {
+        CONNECTING,
+        AWAIT_STATUS,
+        AWAIT_PONG
+    }
+
+    private static class Probe {
+        private final InetSocketAddress address;
+        private final ProbeMode mode;
+        private final long deadlineNanos;
+        private final CompletableFuture<PingService.PingResult> future;
+        private SocketChannel channel;
+        private Stage stage = Stage.CONNECTING;
+        private ByteBuffer writeBuffer;
+        private ByteBuffer readBuffer;
+        private long startNanos;
+        private long requestSentNanos;
+        private long statusRttNanos;
+        private long pingPayload;
+        private int onlinePlayers = -1;
+        private int maxPlayers = -1;
+        private boolean done;
+
+        private Probe(InetSocketAddress address, ProbeMode mode, long deadlineNanos,
+                      CompletableFuture<PingService.PingResult> future) {
+            this.address = address;
+            this.mode = mode;
+            this.deadlineNanos = deadlineNanos;
+            this.future = future;
+        }
+    }
+}
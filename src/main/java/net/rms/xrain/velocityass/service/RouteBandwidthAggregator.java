@@ -0,0 +1,225 @@
+package net.rms.xrain.velocityass.service;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.ServerConfig;
+import org.slf4j.Logger;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 增量维护每条路由的带宽总量和玩家集合。
+ * 玩家加入、离开、切换路由时只调整相关路由的累计值，选路时直接读取累计值，无需遍历所有玩家。
+ * 每个玩家的分配记录是不可变对象，通过 ConcurrentHashMap 原子替换，路由累计值通过 RouteInfo 的原子状态调整，
+ * 加入路径上不持有全局锁；定期刷新时重新计算总量，消除并发增量可能带来的误差。
+ * 新分配的玩家在实测带宽出现之前按估算值预留带宽，实测值到达后逐步抵扣，超过有效期后全部释放。
+ */
+public class RouteBandwidthAggregator {
+
+    // 尚无实测数据时每个玩家的估算带宽 (字节/秒)
+    private static final double DEFAULT_PLAYER_BANDWIDTH = 64 * 1024;
+    private static final double ESTIMATE_ALPHA = 0.3;
+    static final long RESERVATION_TTL_MILLIS = 30_000;
+
+    private final ProxyServer proxyServer;
+    private final Logger logger;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<UUID, PlayerShare> playerShares;
+    private volatile double estimatedPlayerBandwidth = DEFAULT_PLAYER_BANDWIDTH;
+
+    public RouteBandwidthAggregator(ProxyServer proxyServer, Logger logger) {
+        this(proxyServer, logger, System::currentTimeMillis);
+    }
+
+    RouteBandwidthAggregator(ProxyServer proxyServer, Logger logger, LongSupplier clock) {
+        this.proxyServer = proxyServer;
+        this.logger = logger;
+        this.clock = clock;
+        this.playerShares = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 将玩家分配到路由，如果玩家之前在其他路由上则先从旧路由扣除其带宽和预留。
+     * reservation 是选路时已经在 route 上预留的带宽，由这里负责后续的抵扣和释放
+     */
+    public void assignPlayer(UUID playerId, String serverName, RouteInfo route, double reservation) {
+        long now = clock.getAsLong();
+        playerShares.compute(playerId, (id, share) -> {
+            double bandwidth = 0.0;
+            if (share != null) {
+                bandwidth = share.bandwidth;
+                detach(id, share);
+            }
+            route.addConnectedPlayer(id);
+            if (bandwidth > 0) {
+                route.addBandwidthUsage(bandwidth);
+            }
+
+            // 已有的实测带宽直接抵扣预留
+            double reserved = Math.max(0.0, reservation - bandwidth);
+            if (reserved < reservation) {
+                route.addReservedBandwidth(reserved - reservation);
+            }
+            return new PlayerShare(serverName, route, bandwidth, reservation, reserved, now);
+        });
+    }
+
+    public void assignPlayer(UUID playerId, String serverName, RouteInfo route) {
+        assignPlayer(playerId, serverName, route, 0.0);
+    }
+
+    public RouteInfo removePlayer(UUID playerId) {
+        PlayerShare share = playerShares.remove(playerId);
+        if (share == null) {
+            return null;
+        }
+        detach(playerId, share);
+        return share.route;
+    }
+
+    /**
+     * 用玩家最新的带宽数据更新其所在路由的累计值
+     */
+    public void updatePlayerBandwidth(UUID playerId, double bandwidth) {
+        long now = clock.getAsLong();
+        playerShares.computeIfPresent(playerId, (id, share) -> {
+            share.route.addBandwidthUsage(bandwidth - share.bandwidth);
+            return reconcile(share, bandwidth, now);
+        });
+    }
+
+    public RouteInfo getPlayerRoute(UUID playerId) {
+        PlayerShare share = playerShares.get(playerId);
+        return share != null ? share.route : null;
+    }
+
+    public String getPlayerServer(UUID playerId) {
+        PlayerShare share = playerShares.get(playerId);
+        return share != null ? share.serverName : null;
+    }
+
+    public void forEachAssignment(AssignmentConsumer consumer) {
+        for (Map.Entry<UUID, PlayerShare> entry : playerShares.entrySet()) {
+            PlayerShare share = entry.getValue();
+            consumer.accept(entry.getKey(), share.serverName, share.route);
+        }
+    }
+
+    /**
+     * 用采集器最近一次的带宽表更新玩家带宽，并重新计算所有路由的累计值以消除增量误差
+     */
+    public void refresh(BandwidthTable table, Collection<ServerConfig> serverConfigs) {
+        long now = clock.getAsLong();
+        for (int i = 0, size = table.size(); i < size; i++) {
+            double bandwidth = table.getBandwidth(i);
+            playerShares.computeIfPresent(table.getPlayerId(i), (id, share) -> reconcile(share, bandwidth, now));
+        }
+
+        Map<RouteInfo, Double> totals = new IdentityHashMap<>();
+        double measuredTotal = 0.0;
+        int measuredPlayers = 0;
+        for (Map.Entry<UUID, PlayerShare> entry : playerShares.entrySet()) {
+            UUID playerId = entry.getKey();
+            PlayerShare share = entry.getValue();
+            if (proxyServer.getPlayer(playerId).isEmpty()) {
+                if (playerShares.remove(playerId, share)) {
+                    logger.debug("玩家 {} 已下线，将从路由 {} 中移除", playerId, share.route.getAddress());
+                    share.route.removeConnectedPlayer(playerId);
+                    share.route.addReservedBandwidth(-share.reserved);
+                }
+                continue;
+            }
+            if (share.reserved > 0 && now - share.reservedAt > RESERVATION_TTL_MILLIS) {
+                // 没有带宽数据的玩家，预留到期后释放
+                playerShares.computeIfPresent(playerId, (id, current) -> reconcile(current, current.bandwidth, now));
+            }
+            if (share.bandwidth > 0) {
+                measuredTotal += share.bandwidth;
+                measuredPlayers++;
+            }
+            totals.merge(share.route, share.bandwidth, Double::sum);
+        }
+
+        if (measuredPlayers > 0) {
+            double average = measuredTotal / measuredPlayers;
+            estimatedPlayerBandwidth += ESTIMATE_ALPHA * (average - estimatedPlayerBandwidth);
+        }
+
+        for (ServerConfig serverConfig : serverConfigs) {
+            for (RouteInfo route : serverConfig.getRoutes()) {
+                Double total = totals.get(route);
+                route.setCurrentBandwidthUsage(total != null ? total : 0.0);
+            }
+        }
+    }
+
+    public int getTrackedPlayerCount() {
+        return playerShares.size();
+    }
+
+    /**
+     * 选路时为每个新玩家预留的带宽，取最近实测的每玩家平均带宽的指数平滑值
+     */
+    public double getEstimatedPlayerBandwidth() {
+        return estimatedPlayerBandwidth;
+    }
+
+    /**
+     * 恢复上次运行时学到的每玩家估算带宽，非正数时忽略
+     */
+    public void restoreEstimatedPlayerBandwidth(double bandwidth) {
+        if (bandwidth > 0 && !Double.isInfinite(bandwidth)) {
+            estimatedPlayerBandwidth = bandwidth;
+        }
+    }
+
+    /**
+     * 用实测带宽抵扣预留：未到期时预留值为估算值减去实测值，到期后清零，差值同步到路由
+     */
+    private static PlayerShare reconcile(PlayerShare share, double bandwidth, long now) {
+        double reserved = now - share.reservedAt > RESERVATION_TTL_MILLIS
+                ? 0.0 : Math.max(0.0, share.reservation - bandwidth);
+        if (reserved != share.reserved) {
+            share.route.addReservedBandwidth(reserved - share.reserved);
+        }
+        return new PlayerShare(share.serverName, share.route, bandwidth, share.reservation, reserved, share.reservedAt);
+    }
+
+    private void detach(UUID playerId, PlayerShare share) {
+        share.route.removeConnectedPlayer(playerId);
+        share.route.addBandwidthUsage(-share.bandwidth);
+        if (share.reserved > 0) {
+            share.route.addReservedBandwidth(-share.reserved);
+        }
+    }
+
+    @FunctionalInterface
+    public interface AssignmentConsumer {
+        void accept(UUID playerId, String serverName, RouteInfo route);
+    }
+
+    private static final class PlayerShare {
+        private final String serverName;
+        private final RouteInfo route;
+        private final double bandwidth;
+        // 分配时预留的估算带宽，以及当前仍计入路由的预留部分
+        private final double reservation;
+        private final double reserved;
+        private final long reservedAt;
+
+        private PlayerShare(String serverName, RouteInfo route, double bandwidth,
+                            double reservation, double reserved, long reservedAt) {
+            this.serverName = serverName;
+            this.route = route;
+            this.bandwidth = bandwidth;
+            this.reservation = reservation;
+            this.reserved = reserved;
+            this.reservedAt = reservedAt;
+        }
+    }
+}
@@ -2,37 +2,62 @@ package net.rms.xrain.velocityass.service;
 
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
-import com.velocitypowered.api.proxy.player.BandwidthManager;
-import com.velocitypowered.api.proxy.player.PlayerBandwidthStats;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import net.rms.xrain.velocityass.config.ConfigDiff;
 import net.rms.xrain.velocityass.config.ConfigManager;
+import net.rms.xrain.velocityass.config.ConfigSnapshot;
 import net.rms.xrain.velocityass.config.RouteInfo;
 import net.rms.xrain.velocityass.config.ServerConfig;
 import org.slf4j.Logger;
 
+import java.io.IOException;
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class RouteManager {
     private final ConfigManager configManager;
     private final ProxyServer proxyServer;
     private final Logger logger;
     private final Map<String, Long> lastConnectionAttempt;
-    private final Map<UUID, String> playerRouteMapping;
     private final BandwidthAwareRouteSelector bandwidthSelector;
-    private final BandwidthManager bandwidthManager;
+    private final BandwidthCollector bandwidthCollector;
+    private final BandwidthForecaster bandwidthForecaster;
+    private final RouteBandwidthAggregator bandwidthAggregator;
+    private final RouteServerPool routeServerPool;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean bandwidthRefreshPending = new AtomicBoolean();
+    private final Object routingTableLock = new Object();
+    private volatile RoutingTable routingTable;
+    private final JoinLatencyRecorder joinLatency = new JoinLatencyRecorder();
+    private final LongAdder redirectCount = new LongAdder();
+    private final LongAdder redirectNanos = new LongAdder();
+    private final AtomicLong maxRedirectNanos = new AtomicLong();
     
     public RouteManager(ConfigManager configManager, ProxyServer proxyServer, Logger logger) {
         this.configManager = configManager;
         this.proxyServer = proxyServer;
         this.logger = logger;
         this.lastConnectionAttempt = new ConcurrentHashMap<>();
-        this.playerRouteMapping = new ConcurrentHashMap<>();
-        this.bandwidthSelector = new BandwidthAwareRouteSelector(proxyServer, logger);
-        this.bandwidthManager = proxyServer.getBandwidthManager();
+        this.bandwidthSelector = new BandwidthAwareRouteSelector(logger);
+        this.bandwidthCollector = new BandwidthCollector(proxyServer, logger);
+        this.bandwidthForecaster = new BandwidthForecaster(logger, bandwidthSelector.getBandwidthThreshold());
+        this.bandwidthAggregator = new RouteBandwidthAggregator(proxyServer, logger);
+        this.scheduler = Executors.newScheduledThreadPool(1);
+        ConfigSnapshot config = configManager.getSnapshot();
+        this.routingTable = RoutingTable.build(config.getServers());
+        this.routeServerPool = new RouteServerPool(proxyServer, logger);
+        routeServerPool.sync(config.getServers());
         
-        bandwidthManager.setBandwidthTrackingEnabled(true);
+        bandwidthCollector.getBandwidthManager().setBandwidthTrackingEnabled(true);
+        startBandwidthAggregation();
         logger.info("RouteManager已初始化，带宽感知路由选择已启用");
     }
     
@@ -41,19 +66,36 @@ public class RouteManager {
     }
     
     public RouteInfo selectBestRoute(String serverName, UUID playerId) {
-        ServerConfig serverConfig = configManager.getServerConfig(serverName);
-        if (serverConfig == null) {
+        long startNanos = System.nanoTime();
+        try {
+            return selectRoute(serverName, playerId);
+        } finally {
+            joinLatency.record(JoinLatencyRecorder.Stage.SELECT, serverName, System.nanoTime() - startNanos);
+        }
+    }
+    
+    /**
+     * 只读预览当前会为新玩家选中的路由，不会改变任何路由状态
+     */
+    public RouteInfo previewRoute(String serverName) {
+        return bandwidthSelector.previewRoute(routingTable.getServerRoutes(serverName));
+    }
+    
+    private RouteInfo selectRoute(String serverName, UUID playerId) {
+        RoutingTable.ServerRoutes serverRoutes = routingTable.getServerRoutes(serverName);
+        if (serverRoutes == null) {
             logger.debug("未找到服务器 {} 的配置", serverName);
             return null;
         }
         
-        updateAllRoutesBandwidth();
-        
         RouteInfo bestRoute;
+        double reservation = 0.0;
         if (playerId != null) {
-            bestRoute = bandwidthSelector.selectBestRouteWithFallback(serverConfig, playerId);
+            refreshStaleBandwidth();
+            reservation = bandwidthAggregator.getEstimatedPlayerBandwidth();
+            bestRoute = bandwidthSelector.admitPlayer(serverRoutes, playerId, reservation);
         } else {
-            bestRoute = serverConfig.getBestRoute();
+            bestRoute = serverRoutes.getBestRoute();
         }
         
         if (bestRoute == null) {
@@ -65,31 +107,121 @@ public class RouteManager {
         lastConnectionAttempt.put(key, System.currentTimeMillis());
         
         if (playerId != null) {
-            playerRouteMapping.put(playerId, bestRoute.getAddress());
+            bandwidthAggregator.assignPlayer(playerId, serverName, bestRoute, reservation);
+            bestRoute.recordSelection();
         }
         
-        logger.debug("为服务器 {} 选择路由: {} (延迟: {}ms, 带宽使用率: {:.1f}%)", 
-                serverName, bestRoute.getAddress(), bestRoute.getLastPing(), 
-                bestRoute.getBandwidthUtilization());
+        if (logger.isDebugEnabled()) {
+            logger.debug("为服务器 {} 选择路由: {} (延迟: {}ms, 带宽使用率: {}%)", 
+                    serverName, bestRoute.getAddress(), bestRoute.getLastPing(), 
+                    String.format("%.1f", bestRoute.getBandwidthUtilization()));
+        }
         
         return bestRoute;
     }
     
     public void updateRouteStatus(String serverName, String address, boolean available, long ping) {
         ServerConfig serverConfig = configManager.getServerConfig(serverName);
-        if (serverConfig == null) {
+        RouteInfo route = routingTable.findRoute(serverName, address);
+        if (serverConfig == null || route == null) {
             return;
         }
         
-        for (RouteInfo route : serverConfig.getRoutes()) {
-            if (route.getAddress().equals(address)) {
-                route.setAvailable(available);
-                if (available && ping > 0) {
-                    route.setLastPing(ping);
-                }
-                break;
+        boolean availabilityChanged = route.isAvailable() != available;
+        // 每个新采样都会改变平滑延迟，auto-sort 服务器需要重新排序
+        boolean latencySampled = available && ping > 0;
+        
+        route.updateStatus(available, ping);
+        
+        if (availabilityChanged || (latencySampled && serverConfig.isAutoSort())) {
+            rebuildRoutingTable(serverConfig);
+        }
+    }
+    
+    public void updateRouteStatus(String serverName, String address, PingService.PingResult result) {
+        RouteInfo route = routingTable.findRoute(serverName, address);
+        if (route != null) {
+            route.recordProbe(result.available);
+        }
+        if (route != null && result.available) {
+            route.getLatencyStats().record(result.rttNanos);
+            if (result.hasPlayerCounts()) {
+                route.setPlayerCounts(result.onlinePlayers, result.maxPlayers);
             }
         }
+        updateRouteStatus(serverName, address, result.available, result.ping);
+    }
+    
+    public RouteInfo findRoute(String serverName, String address) {
+        return routingTable.findRoute(serverName, address);
+    }
+    
+    public RouteInfo getPlayerRoute(UUID playerId) {
+        return bandwidthAggregator.getPlayerRoute(playerId);
+    }
+    
+    public String getPlayerRouteServer(UUID playerId) {
+        return bandwidthAggregator.getPlayerServer(playerId);
+    }
+    
+    /**
+     * 重新构建所有服务器的路由表并原子替换
+     */
+    public void rebuildRoutingTable() {
+        synchronized (routingTableLock) {
+            routingTable = RoutingTable.build(configManager.getSnapshot().getServers());
+        }
+        logger.debug("路由表已重建，共 {} 个服务器", routingTable.getServerCount());
+    }
+    
+    private void rebuildRoutingTable(ServerConfig serverConfig) {
+        synchronized (routingTableLock) {
+            routingTable = routingTable.withServer(serverConfig);
+        }
+    }
+    
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+    
+    /**
+     * 重新加载配置。地址不变的路由保留原有对象和全部运行时状态，只有新增、移除和修改的路由会生效
+     */
+    public ConfigDiff reloadConfig() throws IOException {
+        return applyReload(configManager.reloadConfig());
+    }
+    
+    /**
+     * 配置文件内容未变化时返回 null，供配置文件监视使用
+     */
+    public ConfigDiff reloadConfigIfChanged() throws IOException {
+        ConfigDiff diff = configManager.reloadConfigIfChanged();
+        return diff != null ? applyReload(diff) : null;
+    }
+    
+    private synchronized ConfigDiff applyReload(ConfigDiff diff) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        synchronized (routingTableLock) {
+            routingTable = RoutingTable.build(config.getServers());
+        }
+        routeServerPool.sync(config.getServers());
+        syncPlayerRouteMapping();
+        bandwidthForecaster.update(config.getServers());
+        logger.debug("已应用配置版本 {}", config.getVersion());
+        
+        for (String route : diff.getAddedRoutes()) {
+            logger.info("新增路由: {}", route);
+        }
+        for (String route : diff.getRemovedRoutes()) {
+            logger.info("移除路由: {}", route);
+        }
+        for (String route : diff.getChangedRoutes()) {
+            logger.info("路由配置已更新: {}", route);
+        }
+        for (String serverName : diff.getChangedServers()) {
+            logger.info("服务器设置已更新: {}", serverName);
+        }
+        return diff;
     }
     
     public void markRouteUnavailable(String serverName, String address) {
@@ -111,83 +243,44 @@ public class RouteManager {
     }
     
     public int getAvailableRouteCount(String serverName) {
-        ServerConfig config = configManager.getServerConfig(serverName);
-        if (config == null) {
-            return 0;
-        }
-        
-        return (int) config.getRoutes().stream()
-                .filter(route -> route.isEnabled() && route.isAvailable())
-                .count();
+        RoutingTable.ServerRoutes serverRoutes = routingTable.getServerRoutes(serverName);
+        return serverRoutes != null ? serverRoutes.getCandidateCount() : 0;
     }
     
     public void updatePlayerBandwidthUsage(Player player) {
-        Optional<PlayerBandwidthStats> statsOpt = bandwidthManager.getPlayerBandwidthStats(player);
-        if (!statsOpt.isPresent()) {
+        double bandwidth = bandwidthCollector.getTable().getBandwidth(player.getUniqueId());
+        if (bandwidth < 0) {
             logger.debug("无法获取玩家 {} 的带宽统计信息", player.getUsername());
             return;
         }
         
-        String routeAddress = playerRouteMapping.get(player.getUniqueId());
-        
-        if (routeAddress == null) {
+        RouteInfo route = bandwidthAggregator.getPlayerRoute(player.getUniqueId());
+        if (route == null) {
             logger.debug("玩家 {} 没有路由映射", player.getUsername());
             return;
         }
         
-        if (player.getCurrentServer().isPresent()) {
-            String serverName = player.getCurrentServer().get().getServerInfo().getName();
-            ServerConfig serverConfig = configManager.getServerConfig(serverName);
-            
-            if (serverConfig != null) {
-                for (RouteInfo route : serverConfig.getRoutes()) {
-                    if (route.getAddress().equals(routeAddress)) {
-                        double totalBandwidth = calculateRouteBandwidthUsage(route);
-                        route.setCurrentBandwidthUsage(totalBandwidth);
-                        
-                        logger.debug("更新路由 {} 带宽使用: {:.2f} KB/s", 
-                                routeAddress, totalBandwidth / 1024.0);
-                        break;
-                    }
-                }
-            }
+        bandwidthAggregator.updatePlayerBandwidth(player.getUniqueId(), bandwidth);
+        
+        if (logger.isDebugEnabled()) {
+            logger.debug("更新路由 {} 带宽使用: {} KB/s", 
+                    route.getAddress(), String.format("%.2f", route.getCurrentBandwidthUsage() / 1024.0));
         }
     }
     
-    private double calculateRouteBandwidthUsage(RouteInfo route) {
-        double totalBandwidth = 0.0;
-        int actualPlayers = 0;
-        
-        logger.debug("计算路由 {} 带宽使用, 玩家列表大小: {}", route.getAddress(), route.getConnectedPlayerCount());
-        
-        for (UUID playerId : route.getConnectedPlayers()) {
-            Player player = proxyServer.getPlayer(playerId).orElse(null);
-            if (player != null) {
-                Optional<PlayerBandwidthStats> statsOpt = bandwidthManager.getPlayerBandwidthStats(player);
-                if (statsOpt.isPresent()) {
-                    PlayerBandwidthStats stats = statsOpt.get();
-                    double playerBandwidth = stats.getDownloadSpeed() + stats.getUploadSpeed();
-                    totalBandwidth += playerBandwidth;
-                    actualPlayers++;
-                    
-                    logger.debug("玩家 {} 带宽: 下载 {:.2f} KB/s, 上传 {:.2f} KB/s, 总计 {:.2f} KB/s", 
-                            player.getUsername(),
-                            stats.getDownloadSpeed() / 1024.0,
-                            stats.getUploadSpeed() / 1024.0,
-                            playerBandwidth / 1024.0);
-                } else {
-                    logger.debug("无法获取玩家 {} 的带宽统计", player.getUsername());
-                }
-            } else {
-                logger.debug("玩家 {} 已下线，将从路由中移除", playerId);
-                route.removeConnectedPlayer(playerId);
-            }
+    /**
+     * 玩家连接到新服务器后，如果已离开之前分配的路由则释放该路由上的占用
+     */
+    public void onPlayerServerConnected(UUID playerId, String serverName, String serverAddress) {
+        String assignedServer = bandwidthAggregator.getPlayerServer(playerId);
+        RouteInfo assignedRoute = bandwidthAggregator.getPlayerRoute(playerId);
+        if (assignedServer == null || assignedRoute == null) {
+            return;
         }
         
-        logger.debug("路由 {} 总带宽使用: {:.2f} KB/s ({} 活跃玩家)", 
-                route.getAddress(), totalBandwidth / 1024.0, actualPlayers);
-        
-        return totalBandwidth;
+        if (!assignedServer.equals(serverName) && !assignedRoute.getAddress().equals(serverAddress)) {
+            removePlayerFromAllRoutes(playerId);
+        }
     }
     
     public void onPlayerDisconnect(UUID playerId) {
@@ -196,90 +289,142 @@ public class RouteManager {
     }
     
     public void removePlayerFromAllRoutes(UUID playerId) {
-        String routeAddress = playerRouteMapping.remove(playerId);
-        if (routeAddress != null) {
-            getAllServerConfigs().values().forEach(serverConfig -> {
-                serverConfig.getRoutes().stream()
-                        .filter(route -> route.getAddress().equals(routeAddress))
-                        .findFirst()
-                        .ifPresent(route -> {
-                            bandwidthSelector.removePlayerFromRoute(playerId, route);
-                            double totalBandwidth = calculateRouteBandwidthUsage(route);
-                            route.setCurrentBandwidthUsage(totalBandwidth);
-                        });
-            });
-            
-            logger.debug("从路由 {} 移除玩家 {}", routeAddress, playerId);
+        RouteInfo route = bandwidthAggregator.removePlayer(playerId);
+        if (route != null) {
+            logger.debug("从路由 {} 移除玩家 {}", route.getAddress(), playerId);
         }
-        
-        getAllServerConfigs().values().forEach(serverConfig -> {
-            serverConfig.getRoutes().forEach(route -> {
-                if (route.getConnectedPlayers().remove(playerId)) {
-                    logger.debug("从路由 {} 额外清理玩家 {}", route.getAddress(), playerId);
-                    double totalBandwidth = calculateRouteBandwidthUsage(route);
-                    route.setCurrentBandwidthUsage(totalBandwidth);
-                }
-            });
-        });
     }
     
     public void updateAllRoutesBandwidth() {
         logger.debug("开始更新所有路由的带宽信息");
         
+        // 整个汇总过程使用同一个配置版本
+        ConfigSnapshot config = configManager.getSnapshot();
+        BandwidthTable table = bandwidthCollector.collect();
         syncPlayerRouteMapping();
+        bandwidthAggregator.refresh(table, config.getServers());
+        recordRouteHistory(config, table.getCollectedAt());
+        bandwidthForecaster.update(config.getServers());
         
-        getAllServerConfigs().values().forEach(serverConfig -> {
-            serverConfig.getRoutes().forEach(route -> {
-                double totalBandwidth = calculateRouteBandwidthUsage(route);
-                route.setCurrentBandwidthUsage(totalBandwidth);
-                route.setLastBandwidthUpdate(System.currentTimeMillis());
-                
-                if (route.isBandwidthLimited()) {
-                    logger.debug("更新路由 {} 带宽: {:.2f}/{:.2f} KB/s ({:.1f}%)", 
-                            route.getAddress(),
-                            totalBandwidth / 1024.0,
-                            route.getMaxBandwidth() / 1024.0,
-                            route.getBandwidthUtilization());
+        logger.debug("所有路由带宽信息更新完成");
+    }
+    
+    /**
+     * 立即按当前学到的带宽曲线重新计算预测余量，不等待下一次带宽汇总
+     */
+    public void refreshForecast() {
+        bandwidthForecaster.update(configManager.getSnapshot().getServers());
+    }
+    
+    private void recordRouteHistory(ConfigSnapshot config, long timeMillis) {
+        for (ServerConfig serverConfig : config.getServers()) {
+            for (RouteInfo route : serverConfig.getRoutes()) {
+                route.recordHistory(timeMillis);
+            }
+        }
+    }
+    
+    /**
+     * 带宽数据过时（例如定时任务被阻塞）时在后台补一次采集，加入路径本身不等待采集完成
+     */
+    private void refreshStaleBandwidth() {
+        if (!bandwidthCollector.isStale() || !bandwidthRefreshPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.execute(() -> {
+                try {
+                    logger.debug("带宽数据过时，执行即时带宽数据更新");
+                    updateAllRoutesBandwidth();
+                } catch (Exception e) {
+                    logger.error("汇总路由带宽使用情况时发生错误", e);
+                } finally {
+                    bandwidthRefreshPending.set(false);
                 }
             });
-        });
-        
-        logger.debug("所有路由带宽信息更新完成");
+        } catch (RejectedExecutionException e) {
+            bandwidthRefreshPending.set(false);
+        }
     }
     
+    /**
+     * 配置重载后移除的路由不再出现在路由表中，将玩家的路由分配重新绑定到当前配置中的同地址路由，找不到时移除分配
+     */
     private void syncPlayerRouteMapping() {
-        proxyServer.getAllPlayers().forEach(player -> {
-            String routeAddress = playerRouteMapping.get(player.getUniqueId());
-            if (routeAddress != null) {
-                boolean found = false;
-                for (ServerConfig serverConfig : getAllServerConfigs().values()) {
-                    for (RouteInfo route : serverConfig.getRoutes()) {
-                        if (route.getAddress().equals(routeAddress)) {
-                            if (!route.getConnectedPlayers().contains(player.getUniqueId())) {
-                                route.addConnectedPlayer(player.getUniqueId());
-                                logger.debug("同步：将玩家 {} 添加到路由 {} (配置: {})", 
-                                        player.getUsername(), routeAddress, serverConfig.getServerName());
-                            }
-                            found = true;
-                            break;
-                        }
-                    }
-                    if (found) break;
-                }
-                
-                if (!found) {
-                    logger.warn("玩家 {} 的路由 {} 在配置中未找到", player.getUsername(), routeAddress);
-                }
+        RoutingTable table = routingTable;
+        bandwidthAggregator.forEachAssignment((playerId, serverName, assignedRoute) -> {
+            RouteInfo currentRoute = table.findRoute(serverName, assignedRoute.getAddress());
+            
+            if (currentRoute == null) {
+                logger.warn("玩家 {} 的路由 {} 在配置中未找到", playerId, assignedRoute.getAddress());
+                removePlayerFromAllRoutes(playerId);
+            } else if (currentRoute != assignedRoute) {
+                bandwidthAggregator.assignPlayer(playerId, serverName, currentRoute);
+                logger.debug("同步：将玩家 {} 添加到路由 {} (配置: {})", playerId, currentRoute.getAddress(), serverName);
             }
         });
     }
     
-    public BandwidthAwareRouteSelector getBandwidthSelector() {
-        return bandwidthSelector;
+    private void startBandwidthAggregation() {
+        long interval = BandwidthCollector.COLLECT_INTERVAL_SECONDS;
+        try {
+            logger.info("执行初始带宽数据更新...");
+            updateAllRoutesBandwidth();
+        } catch (Exception e) {
+            logger.warn("初始带宽数据更新失败", e);
+        }
+        
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                updateAllRoutesBandwidth();
+            } catch (Exception e) {
+                logger.error("汇总路由带宽使用情况时发生错误", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        
+        logger.info("带宽监控任务已启动，更新间隔: {}秒", interval);
+    }
+    
+    /**
+     * 记录一次预连接重定向为玩家连接额外增加的耗时
+     */
+    public void recordRedirect(long overheadNanos) {
+        redirectCount.increment();
+        redirectNanos.add(overheadNanos);
+        maxRedirectNanos.accumulateAndGet(overheadNanos, Math::max);
+    }
+    
+    public long getRedirectCount() {
+        return redirectCount.sum();
+    }
+    
+    public double getAverageRedirectMillis() {
+        long count = redirectCount.sum();
+        return count > 0 ? redirectNanos.sum() / (double) count / 1_000_000.0 : 0.0;
+    }
+    
+    public double getMaxRedirectMillis() {
+        return maxRedirectNanos.get() / 1_000_000.0;
+    }
+    
+    public JoinLatencyRecorder getJoinLatency() {
+        return joinLatency;
+    }
+    
+    public RegisteredServer getRouteServer(String serverName, RouteInfo route) {
+        return routeServerPool.getServer(serverName, route);
+    }
+    
+    public RouteBandwidthAggregator getBandwidthAggregator() {
+        return bandwidthAggregator;
     }
     
-    public Map<UUID, String> getPlayerRouteMapping() {
-        return new ConcurrentHashMap<>(playerRouteMapping);
+    public BandwidthCollector getBandwidthCollector() {
+        return bandwidthCollector;
+    }
+    
+    public BandwidthAwareRouteSelector getBandwidthSelector() {
+        return bandwidthSelector;
     }
     
     public ProxyServer getProxyServer() {
@@ -287,9 +432,16 @@ public class RouteManager {
     }
     
     public void shutdown() {
-        if (bandwidthSelector != null) {
-            bandwidthSelector.shutdown();
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
         }
+        
         logger.info("RouteManager已关闭");
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package net.rms.xrain.velocityass.service;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerInfo;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.ServerConfig;
+import org.slf4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 为每条配置的路由维护一个长期存在的 RegisteredServer，连接时直接复用，不再为每次连接注册临时服务器。
+ * 路由服务器通过 createRawRegisteredServer 创建，不进入 Velocity 的服务器注册表，
+ * 并沿用逻辑服务器的名称，因此其他插件看到的仍是原服务器名。
+ */
+public class RouteServerPool {
+
+    private final ProxyServer proxyServer;
+    private final Logger logger;
+    private volatile Map<String, Map<String, RegisteredServer>> servers;
+
+    public RouteServerPool(ProxyServer proxyServer, Logger logger) {
+        this.proxyServer = proxyServer;
+        this.logger = logger;
+        this.servers = Collections.emptyMap();
+    }
+
+    /**
+     * 根据当前配置同步路由服务器，地址未变化的路由继续使用原有实例
+     */
+    public synchronized void sync(Collection<ServerConfig> serverConfigs) {
+        Map<String, Map<String, RegisteredServer>> previous = servers;
+        Map<String, Map<String, RegisteredServer>> next = new HashMap<>();
+        int created = 0;
+
+        for (ServerConfig serverConfig : serverConfigs) {
+            String serverName = serverConfig.getServerName();
+            Map<String, RegisteredServer> oldRoutes = previous.getOrDefault(serverName, Collections.emptyMap());
+            Optional<RegisteredServer> registered = proxyServer.getServer(serverName);
+            Map<String, RegisteredServer> routes = new HashMap<>();
+
+            for (RouteInfo route : serverConfig.getRoutes()) {
+                String address = route.getAddress();
+                if (routes.containsKey(address)) {
+                    continue;
+                }
+
+                RegisteredServer server = oldRoutes.get(address);
+                if (server == null && registered.isPresent() && address.equals(formatAddress(registered.get().getServerInfo()))) {
+                    server = registered.get();
+                }
+                if (server == null) {
+                    try {
+                        InetSocketAddress socketAddress = InetSocketAddress.createUnresolved(route.getHost(), route.getPort());
+                        server = proxyServer.createRawRegisteredServer(new ServerInfo(serverName, socketAddress));
+                        created++;
+                    } catch (RuntimeException e) {
+                        logger.warn("无法为路由 {} -> {} 创建服务器实例: {}", serverName, address, e.getMessage());
+                        continue;
+                    }
+                }
+                routes.put(address, server);
+            }
+
+            next.put(serverName, Collections.unmodifiableMap(routes));
+        }
+
+        servers = Collections.unmodifiableMap(next);
+        logger.debug("路由服务器池已同步，新建 {} 个路由服务器", created);
+    }
+
+    public RegisteredServer getServer(String serverName, RouteInfo route) {
+        Map<String, RegisteredServer> routes = servers.get(serverName);
+        return routes != null ? routes.get(route.getAddress()) : null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, RegisteredServer> routes : servers.values()) {
+            size += routes.size();
+        }
+        return size;
+    }
+
+    public static String formatAddress(ServerInfo serverInfo) {
+        InetSocketAddress address = serverInfo.getAddress();
+        return address.getHostString() + ":" + address.getPort();
+    }
+}
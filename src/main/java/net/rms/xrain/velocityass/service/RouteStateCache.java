@@ -0,0 +1,313 @@
+package net.rms.xrain.velocityass.service;
+
+import net.rms.xrain.velocityass.config.ConfigSnapshot;
+import net.rms.xrain.velocityass.config.LatencyStats;
+import net.rms.xrain.velocityass.config.RouteHistory;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.RouteState;
+import net.rms.xrain.velocityass.config.ServerConfig;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 把路由健康状态、延迟统计和按时段学习的带宽曲线定期写入数据目录下的 route-state.bin，
+ * 代理重启时读回，使重启后的第一个玩家就能按上次的状态选路，而不必等到探测和带宽汇总重新预热。
+ *
+ * 文件通过内存映射原地重写，不使用临时文件加重命名（Windows 上已映射的文件无法被替换）；
+ * 写到一半崩溃留下的文件由头部的 CRC32 识别后丢弃，相当于冷启动。
+ * 健康状态、延迟和玩家数只在文件足够新时恢复，带宽曲线和每玩家估算带宽与时间点无关，总是恢复。
+ */
+public class RouteStateCache {
+
+    public static final String FILE_NAME = "route-state.bin";
+
+    private static final int MAGIC = 0x56415353; // "VASS"
+    private static final int FORMAT_VERSION = 1;
+    // magic, version, savedAt, estimatedPlayerBandwidth, entryCount, payloadLength, crc
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int CRC_OFFSET = HEADER_SIZE - 4;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final long MAX_STATE_AGE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final byte FLAG_AVAILABLE = 1;
+
+    private final Path file;
+    private final RouteManager routeManager;
+    private final Logger logger;
+    private final long[] sampleBuffer = new long[LatencyStats.WINDOW_SIZE];
+    private final float[] profileBuffer = new float[RouteHistory.PROFILE_LENGTH];
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    public RouteStateCache(Path dataDirectory, RouteManager routeManager, Logger logger) {
+        this.file = dataDirectory.resolve(FILE_NAME);
+        this.routeManager = routeManager;
+        this.logger = logger;
+    }
+
+    /**
+     * 读取上次保存的状态并应用到当前配置中地址相同的路由，文件不存在或损坏时什么也不做
+     */
+    public synchronized void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            ByteBuffer buffer = map(0);
+            if (buffer == null) {
+                return;
+            }
+            int restored = restore(buffer);
+            if (restored >= 0) {
+                routeManager.rebuildRoutingTable();
+                routeManager.refreshForecast();
+            }
+        } catch (IOException e) {
+            logger.warn("读取路由状态缓存失败，将从空状态开始: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把当前所有路由的状态写入缓存文件
+     */
+    public synchronized void save() {
+        ConfigSnapshot config = routeManager.getConfigManager().getSnapshot();
+        try {
+            ByteBuffer buffer = map(HEADER_SIZE + estimateSize(config));
+            if (buffer == null) {
+                return;
+            }
+
+            buffer.position(HEADER_SIZE);
+            int entryCount = 0;
+            for (ServerConfig serverConfig : config.getServers()) {
+                byte[] serverName = encode(serverConfig.getServerName());
+                for (RouteInfo route : serverConfig.getRoutes()) {
+                    writeEntry(buffer, serverName, route);
+                    entryCount++;
+                }
+            }
+            int payloadLength = buffer.position() - HEADER_SIZE;
+
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putLong(8, System.currentTimeMillis());
+            buffer.putDouble(16, routeManager.getBandwidthAggregator().getEstimatedPlayerBandwidth());
+            buffer.putInt(24, entryCount);
+            buffer.putInt(28, payloadLength);
+            buffer.putInt(CRC_OFFSET, checksum(buffer, payloadLength));
+            mapped.force();
+            logger.debug("路由状态缓存已保存，共 {} 条路由，{} 字节", entryCount, HEADER_SIZE + payloadLength);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("保存路由状态缓存失败: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        mapped = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("关闭路由状态缓存失败: {}", e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * 返回至少 minSize 字节的映射，只在需要更大空间时重新映射；minSize 为 0 时映射文件现有长度
+     */
+    private ByteBuffer map(int minSize) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        long size = minSize > 0 ? minSize : channel.size();
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        if (mapped == null || mapped.capacity() < size) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.clear();
+        return buffer;
+    }
+
+    private int restore(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            logger.warn("路由状态缓存格式不匹配，已忽略: {}", file);
+            return -1;
+        }
+        int entryCount = buffer.getInt(24);
+        int payloadLength = buffer.getInt(28);
+        if (payloadLength < 0 || payloadLength > buffer.capacity() - HEADER_SIZE
+                || checksum(buffer, payloadLength) != buffer.getInt(CRC_OFFSET)) {
+            logger.warn("路由状态缓存已损坏，已忽略: {}", file);
+            return -1;
+        }
+
+        long savedAt = buffer.getLong(8);
+        long age = System.currentTimeMillis() - savedAt;
+        boolean fresh = age >= 0 && age <= MAX_STATE_AGE_MILLIS;
+        routeManager.getBandwidthAggregator().restoreEstimatedPlayerBandwidth(buffer.getDouble(16));
+
+        buffer.position(HEADER_SIZE);
+        buffer.limit(HEADER_SIZE + payloadLength);
+        int restored = 0;
+        try {
+            for (int i = 0; i < entryCount; i++) {
+                if (readEntry(buffer, fresh)) {
+                    restored++;
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("路由状态缓存内容不完整，已恢复 {} 条路由", restored);
+        }
+
+        logger.info("已从缓存恢复 {} 条路由的状态 (保存于 {} 秒前{})", restored,
+                TimeUnit.MILLISECONDS.toSeconds(Math.max(0, age)), fresh ? "" : "，已过期，只恢复带宽曲线");
+        return restored;
+    }
+
+    private void writeEntry(ByteBuffer buffer, byte[] serverName, RouteInfo route) {
+        RouteState state = route.getState();
+        LatencyStats latency = route.getLatencyStats();
+
+        putString(buffer, serverName);
+        putString(buffer, encode(route.getAddress()));
+        buffer.put(state.isAvailable() ? FLAG_AVAILABLE : 0);
+        buffer.putLong(state.getLastPing());
+        buffer.putInt(state.getOnlinePlayers());
+        buffer.putInt(state.getMaxPlayers());
+        buffer.putDouble(latency.getEwmaMillis());
+        buffer.putDouble(latency.getJitterMillis());
+
+        int sampleCount = latency.copySamples(sampleBuffer);
+        buffer.putInt(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            buffer.putLong(sampleBuffer[i]);
+        }
+
+        route.getHistory().copyProfile(profileBuffer);
+        if (hasProfile()) {
+            buffer.put((byte) 1);
+            for (float value : profileBuffer) {
+                buffer.putFloat(value);
+            }
+        } else {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * 读取一条记录，路由仍在当前配置中时应用并返回 true
+     */
+    private boolean readEntry(ByteBuffer buffer, boolean fresh) {
+        String serverName = getString(buffer);
+        String address = getString(buffer);
+        boolean available = (buffer.get() & FLAG_AVAILABLE) != 0;
+        long lastPing = buffer.getLong();
+        int onlinePlayers = buffer.getInt();
+        int maxPlayers = buffer.getInt();
+        double ewma = buffer.getDouble();
+        double jitter = buffer.getDouble();
+
+        int sampleCount = buffer.getInt();
+        if (sampleCount < 0 || sampleCount > LatencyStats.WINDOW_SIZE) {
+            throw new IllegalArgumentException("sampleCount " + sampleCount);
+        }
+        for (int i = 0; i < sampleCount; i++) {
+            sampleBuffer[i] = buffer.getLong();
+        }
+        boolean profilePresent = buffer.get() != 0;
+        if (profilePresent) {
+            for (int i = 0; i < profileBuffer.length; i++) {
+                profileBuffer[i] = buffer.getFloat();
+            }
+        }
+
+        RouteInfo route = routeManager.findRoute(serverName, address);
+        if (route == null) {
+            return false;
+        }
+        if (fresh) {
+            // updateStatus 会丢弃不可用路由的延迟，这里原样恢复上次已知的值
+            route.setLastPing(lastPing);
+            route.setAvailable(available);
+            route.setPlayerCounts(onlinePlayers, maxPlayers);
+            route.getLatencyStats().restore(sampleBuffer, sampleCount, ewma, jitter);
+        }
+        if (profilePresent) {
+            route.getHistory().restoreProfile(profileBuffer);
+        }
+        return true;
+    }
+
+    private boolean hasProfile() {
+        for (float value : profileBuffer) {
+            if (!Float.isNaN(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 记录长度的上限，字符串按每个字符 3 字节估算
+     */
+    private static int estimateSize(ConfigSnapshot config) {
+        long size = 0;
+        for (ServerConfig serverConfig : config.getServers()) {
+            int serverBytes = 2 + Math.min(MAX_STRING_BYTES, serverConfig.getServerName().length() * 3);
+            for (RouteInfo route : serverConfig.getRoutes()) {
+                size += serverBytes + 2 + Math.min(MAX_STRING_BYTES, route.getAddress().length() * 3)
+                        + 1 + 8 + 4 + 4 + 8 + 8
+                        + 4 + LatencyStats.WINDOW_SIZE * 8L
+                        + 1 + RouteHistory.PROFILE_LENGTH * 4L;
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE - HEADER_SIZE, size);
+    }
+
+    private static int checksum(ByteBuffer buffer, int payloadLength) {
+        CRC32 crc = new CRC32();
+        ByteBuffer region = buffer.duplicate();
+        region.limit(CRC_OFFSET).position(0);
+        crc.update(region);
+        region.limit(HEADER_SIZE + payloadLength).position(HEADER_SIZE);
+        crc.update(region);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("名称过长: " + text);
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
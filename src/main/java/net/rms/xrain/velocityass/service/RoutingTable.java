@@ -0,0 +1,159 @@
+package net.rms.xrain.velocityass.service;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.ServerConfig;
+import net.rms.xrain.velocityass.service.strategy.RouteSelectionStrategy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不可变的路由表快照，每个服务器的候选路由在构建时按优先级排好序。
+ * 只在延迟检测结果、可用性变化或配置重载时重建，选路时直接遍历数组。
+ */
+public final class RoutingTable {
+
+    private static final RouteInfo[] NO_ROUTES = new RouteInfo[0];
+    private static final ServerRoutes[] NO_SERVERS = new ServerRoutes[0];
+
+    private final Map<String, ServerRoutes> servers;
+    // 按服务器名排序，供需要遍历所有服务器的场景（命令输出、指标导出）按下标读取
+    private final ServerRoutes[] serverList;
+
+    private RoutingTable(Map<String, ServerRoutes> servers) {
+        this.servers = servers;
+        ServerRoutes[] list = servers.values().toArray(NO_SERVERS);
+        Arrays.sort(list, Comparator.comparing(ServerRoutes::getServerName));
+        this.serverList = list;
+    }
+
+    public static RoutingTable empty() {
+        return new RoutingTable(Collections.emptyMap());
+    }
+
+    public static RoutingTable build(Collection<ServerConfig> serverConfigs) {
+        Map<String, ServerRoutes> servers = new HashMap<>();
+        for (ServerConfig serverConfig : serverConfigs) {
+            servers.put(serverConfig.getServerName(), ServerRoutes.of(serverConfig));
+        }
+        return new RoutingTable(Collections.unmodifiableMap(servers));
+    }
+
+    /**
+     * 返回只替换了指定服务器路由的新路由表
+     */
+    public RoutingTable withServer(ServerConfig serverConfig) {
+        Map<String, ServerRoutes> copy = new HashMap<>(servers);
+        copy.put(serverConfig.getServerName(), ServerRoutes.of(serverConfig));
+        return new RoutingTable(Collections.unmodifiableMap(copy));
+    }
+
+    public ServerRoutes getServerRoutes(String serverName) {
+        return servers.get(serverName);
+    }
+
+    public RouteInfo findRoute(String serverName, String address) {
+        ServerRoutes serverRoutes = servers.get(serverName);
+        return serverRoutes != null ? serverRoutes.findRoute(address) : null;
+    }
+
+    public int getServerCount() {
+        return serverList.length;
+    }
+
+    public ServerRoutes getServer(int index) {
+        return serverList[index];
+    }
+
+    public static final class ServerRoutes {
+        private final String serverName;
+        final RouteInfo[] candidates;
+        private final RouteInfo[] routes;
+        private final RouteInfo bestRoute;
+        private final Map<String, RouteInfo> routesByAddress;
+        private final RouteSelectionStrategy strategy;
+
+        private ServerRoutes(String serverName, RouteInfo[] candidates, RouteInfo[] routes, RouteInfo bestRoute,
+                             Map<String, RouteInfo> routesByAddress, RouteSelectionStrategy strategy) {
+            this.serverName = serverName;
+            this.candidates = candidates;
+            this.routes = routes;
+            this.bestRoute = bestRoute;
+            this.routesByAddress = routesByAddress;
+            this.strategy = strategy;
+        }
+
+        public static ServerRoutes of(ServerConfig serverConfig) {
+            List<RouteInfo> usable = new ArrayList<>();
+            Map<String, RouteInfo> routesByAddress = new HashMap<>();
+            for (RouteInfo route : serverConfig.getRoutes()) {
+                routesByAddress.putIfAbsent(route.getAddress(), route);
+                if (route.isEnabled() && route.isAvailable()) {
+                    usable.add(route);
+                }
+            }
+            usable.sort(Comparator.comparingInt(RouteInfo::getPriority));
+
+            RouteInfo[] candidates = usable.isEmpty() ? NO_ROUTES : usable.toArray(new RouteInfo[0]);
+            RouteInfo[] routes = serverConfig.getRoutes().toArray(NO_ROUTES);
+            return new ServerRoutes(serverConfig.getServerName(), candidates, routes, serverConfig.getBestRoute(),
+                    Collections.unmodifiableMap(routesByAddress), RouteSelectionStrategy.of(serverConfig.getRouteStrategy()));
+        }
+
+        public String getServerName() {
+            return serverName;
+        }
+
+        public int getCandidateCount() {
+            return candidates.length;
+        }
+
+        /**
+         * 按优先级从高到低获取第 index 条可用路由
+         */
+        public RouteInfo getCandidate(int index) {
+            return candidates[index];
+        }
+
+        /**
+         * 配置中的全部路由数量，包括已禁用和不可用的路由
+         */
+        public int getRouteCount() {
+            return routes.length;
+        }
+
+        /**
+         * 按配置顺序获取第 index 条路由（包括已禁用和不可用的路由）
+         */
+        public RouteInfo getRoute(int index) {
+            return routes[index];
+        }
+
+        /**
+         * 按地址查找路由（包括已禁用和不可用的路由）
+         */
+        public RouteInfo findRoute(String address) {
+            return routesByAddress.get(address);
+        }
+
+        /**
+         * 构建时按 auto-sort 规则（延迟或优先级）选出的最佳路由
+         */
+        public RouteInfo getBestRoute() {
+            return bestRoute;
+        }
+
+        /**
+         * 为玩家选路时使用的策略，由服务器的 route-strategy 配置决定
+         */
+        public RouteSelectionStrategy getStrategy() {
+            return strategy;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.RoutingTable;
+
+import java.util.UUID;
+
+/**
+ * 按玩家 UUID 做加权 rendezvous 哈希 (HRW)：对每条候选路由计算玩家和路由地址的哈希分数，取分数最高的路由。
+ * 同一玩家在路由集合不变时总是落在同一条路由上；增加或移除一条路由时，只有约 1/N 的玩家会换路由。
+ * 首选路由未被接纳（超过带宽阈值）时按分数次高的路由继续尝试，因此溢出的玩家也有稳定的去向。
+ * 没有玩家时（例如预览）按优先级选择。
+ */
+public final class ConsistentHashStrategy implements RouteSelectionStrategy {
+
+    static final ConsistentHashStrategy INSTANCE = new ConsistentHashStrategy();
+
+    private ConsistentHashStrategy() {
+    }
+
+    @Override
+    public RouteInfo select(RoutingTable.ServerRoutes routes, UUID playerId, RouteAdmission admission) {
+        if (playerId == null) {
+            return PriorityStrategy.selectInOrder(routes, admission, null);
+        }
+
+        long playerHash = mix64(playerId.getMostSignificantBits() ^ mix64(playerId.getLeastSignificantBits()));
+        int count = routes.getCandidateCount();
+        boolean[] rejected = null;
+        for (int attempt = 0; attempt < count; attempt++) {
+            int best = -1;
+            double bestScore = 0;
+            for (int i = 0; i < count; i++) {
+                if (rejected != null && rejected[i]) {
+                    continue;
+                }
+                double score = score(playerHash, routes.getCandidate(i));
+                if (best < 0 || score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+
+            RouteInfo candidate = routes.getCandidate(best);
+            if (admission.tryAdmit(candidate)) {
+                return candidate;
+            }
+            if (rejected == null) {
+                rejected = new boolean[count];
+            }
+            rejected[best] = true;
+        }
+        return null;
+    }
+
+    /**
+     * 加权 rendezvous 分数 weight / -ln(u)，u 为 (0, 1) 内由玩家和路由地址决定的均匀哈希值。
+     * 以地址而不是对象参与哈希，配置重载后同一地址的路由分数不变
+     */
+    private static double score(long playerHash, RouteInfo route) {
+        int weight = route.getWeight();
+        if (weight <= 0) {
+            return 0.0;
+        }
+        long hash = mix64(playerHash ^ (route.getAddress().hashCode() * 0x9E3779B97F4A7C15L));
+        double unit = ((hash >>> 11) + 0.5) * 0x1.0p-53;
+        return weight / -Math.log(unit);
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
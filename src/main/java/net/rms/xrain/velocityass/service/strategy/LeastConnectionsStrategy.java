@@ -0,0 +1,16 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+
+public final class LeastConnectionsStrategy extends ScoredRouteStrategy {
+
+    static final LeastConnectionsStrategy INSTANCE = new LeastConnectionsStrategy();
+
+    private LeastConnectionsStrategy() {
+    }
+
+    @Override
+    protected double score(RouteInfo route) {
+        return route.getConnectedPlayerCount();
+    }
+}
@@ -0,0 +1,16 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+
+public final class LeastUtilizationStrategy extends ScoredRouteStrategy {
+
+    static final LeastUtilizationStrategy INSTANCE = new LeastUtilizationStrategy();
+
+    private LeastUtilizationStrategy() {
+    }
+
+    @Override
+    protected double score(RouteInfo route) {
+        return route.getProjectedBandwidthUtilization();
+    }
+}
@@ -0,0 +1,17 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+
+public final class LowestLatencyStrategy extends ScoredRouteStrategy {
+
+    static final LowestLatencyStrategy INSTANCE = new LowestLatencyStrategy();
+
+    private LowestLatencyStrategy() {
+    }
+
+    @Override
+    protected double score(RouteInfo route) {
+        double ping = route.getSmoothedPing();
+        return ping > 0 ? ping : Double.MAX_VALUE;
+    }
+}
@@ -0,0 +1,61 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.RoutingTable;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机取两条候选，选择预计带宽使用率较低的一条，使用率相同时选择玩家较少的。
+ * 只需读取两条路由的状态，路由很多时仍然是常数开销，又能避免所有玩家同时涌向同一条"最空闲"的路由。
+ * 选中的路由未被接纳时退化为全量扫描使用率最低的路由。
+ */
+public final class PowerOfTwoChoicesStrategy extends ScoredRouteStrategy {
+
+    static final PowerOfTwoChoicesStrategy INSTANCE = new PowerOfTwoChoicesStrategy();
+
+    private PowerOfTwoChoicesStrategy() {
+    }
+
+    @Override
+    protected double score(RouteInfo route) {
+        return route.getProjectedBandwidthUtilization();
+    }
+
+    @Override
+    public RouteInfo select(RoutingTable.ServerRoutes routes, UUID playerId, RouteAdmission admission) {
+        int count = routes.getCandidateCount();
+        if (count == 0) {
+            return null;
+        }
+
+        int chosen = 0;
+        if (count > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(count);
+            int second = random.nextInt(count - 1);
+            if (second >= first) {
+                second++;
+            }
+            chosen = isBetter(routes.getCandidate(second), routes.getCandidate(first)) ? second : first;
+        }
+
+        RouteInfo candidate = routes.getCandidate(chosen);
+        if (admission.tryAdmit(candidate)) {
+            return candidate;
+        }
+        boolean[] rejected = new boolean[count];
+        rejected[chosen] = true;
+        return selectLowestScore(routes, admission, rejected);
+    }
+
+    private boolean isBetter(RouteInfo candidate, RouteInfo current) {
+        double candidateScore = score(candidate);
+        double currentScore = score(current);
+        if (candidateScore != currentScore) {
+            return candidateScore < currentScore;
+        }
+        return candidate.getConnectedPlayerCount() < current.getConnectedPlayerCount();
+    }
+}
@@ -0,0 +1,36 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.RoutingTable;
+
+import java.util.UUID;
+
+public final class PriorityStrategy implements RouteSelectionStrategy {
+
+    static final PriorityStrategy INSTANCE = new PriorityStrategy();
+
+    private PriorityStrategy() {
+    }
+
+    @Override
+    public RouteInfo select(RoutingTable.ServerRoutes routes, UUID playerId, RouteAdmission admission) {
+        return selectInOrder(routes, admission, null);
+    }
+
+    /**
+     * 按优先级顺序返回第一条被接纳的路由，跳过 rejected 中已标记的候选
+     */
+    static RouteInfo selectInOrder(RoutingTable.ServerRoutes routes, RouteAdmission admission, boolean[] rejected) {
+        int count = routes.getCandidateCount();
+        for (int i = 0; i < count; i++) {
+            if (rejected != null && rejected[i]) {
+                continue;
+            }
+            RouteInfo candidate = routes.getCandidate(i);
+            if (admission.tryAdmit(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
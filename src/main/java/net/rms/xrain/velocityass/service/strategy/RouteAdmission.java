@@ -0,0 +1,11 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+
+/**
+ * 路由准入判断。选路时可能顺带预留带宽，因此每次调用都视为一次准入尝试，策略只对最终选中的候选调用
+ */
+@FunctionalInterface
+public interface RouteAdmission {
+    boolean tryAdmit(RouteInfo route);
+}
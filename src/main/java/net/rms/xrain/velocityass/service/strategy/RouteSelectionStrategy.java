@@ -0,0 +1,32 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.RouteStrategyType;
+import net.rms.xrain.velocityass.service.RoutingTable;
+
+import java.util.UUID;
+
+/**
+ * 路由选择策略。候选路由只包含已启用且可用的路由，并已按优先级排好序；
+ * 策略决定尝试的顺序，是否接纳由 RouteAdmission 决定；playerId 可能为 null（例如预览）。没有路由被接纳时返回 null，由调用方走 fallback。
+ * 内置实现均无状态，可在多个线程间共享。
+ */
+public interface RouteSelectionStrategy {
+
+    RouteInfo select(RoutingTable.ServerRoutes routes, UUID playerId, RouteAdmission admission);
+
+    static RouteSelectionStrategy of(RouteStrategyType type) {
+        if (type == null) {
+            return PriorityStrategy.INSTANCE;
+        }
+        return switch (type) {
+            case PRIORITY -> PriorityStrategy.INSTANCE;
+            case LOWEST_LATENCY -> LowestLatencyStrategy.INSTANCE;
+            case LEAST_UTILIZATION -> LeastUtilizationStrategy.INSTANCE;
+            case LEAST_CONNECTIONS -> LeastConnectionsStrategy.INSTANCE;
+            case WEIGHTED_RANDOM -> WeightedRandomStrategy.INSTANCE;
+            case POWER_OF_TWO -> PowerOfTwoChoicesStrategy.INSTANCE;
+            case CONSISTENT_HASH -> ConsistentHashStrategy.INSTANCE;
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.RoutingTable;
+
+import java.util.UUID;
+
+/**
+ * 按分数选择路由的策略基类：每次线性扫描取分数最低的候选，分数相同时保持优先级顺序。
+ * 候选未被接纳时将其排除后重新扫描，不对候选排序。
+ */
+abstract class ScoredRouteStrategy implements RouteSelectionStrategy {
+
+    protected abstract double score(RouteInfo route);
+
+    @Override
+    public RouteInfo select(RoutingTable.ServerRoutes routes, UUID playerId, RouteAdmission admission) {
+        return selectLowestScore(routes, admission, null);
+    }
+
+    protected RouteInfo selectLowestScore(RoutingTable.ServerRoutes routes, RouteAdmission admission, boolean[] rejected) {
+        int count = routes.getCandidateCount();
+        for (int attempt = 0; attempt < count; attempt++) {
+            int best = -1;
+            double bestScore = 0;
+            for (int i = 0; i < count; i++) {
+                if (rejected != null && rejected[i]) {
+                    continue;
+                }
+                double score = score(routes.getCandidate(i));
+                if (best < 0 || score < bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+
+            RouteInfo candidate = routes.getCandidate(best);
+            if (admission.tryAdmit(candidate)) {
+                return candidate;
+            }
+            if (rejected == null) {
+                rejected = new boolean[count];
+            }
+            rejected[best] = true;
+        }
+        return null;
+    }
+}
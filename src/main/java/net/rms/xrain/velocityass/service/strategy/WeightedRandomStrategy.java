@@ -0,0 +1,59 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.service.RoutingTable;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按 weight 加权随机选择。被选中的路由未被接纳时将其排除后重新抽取，
+ * 剩余候选的权重都为 0 时按优先级顺序尝试。
+ */
+public final class WeightedRandomStrategy implements RouteSelectionStrategy {
+
+    static final WeightedRandomStrategy INSTANCE = new WeightedRandomStrategy();
+
+    private WeightedRandomStrategy() {
+    }
+
+    @Override
+    public RouteInfo select(RoutingTable.ServerRoutes routes, UUID playerId, RouteAdmission admission) {
+        int count = routes.getCandidateCount();
+        boolean[] rejected = null;
+        for (int attempt = 0; attempt < count; attempt++) {
+            long totalWeight = 0;
+            for (int i = 0; i < count; i++) {
+                if (rejected == null || !rejected[i]) {
+                    totalWeight += routes.getCandidate(i).getWeight();
+                }
+            }
+            if (totalWeight <= 0) {
+                break;
+            }
+
+            long target = ThreadLocalRandom.current().nextLong(totalWeight);
+            int chosen = -1;
+            for (int i = 0; i < count; i++) {
+                if (rejected != null && rejected[i]) {
+                    continue;
+                }
+                target -= routes.getCandidate(i).getWeight();
+                if (target < 0) {
+                    chosen = i;
+                    break;
+                }
+            }
+
+            RouteInfo candidate = routes.getCandidate(chosen);
+            if (admission.tryAdmit(candidate)) {
+                return candidate;
+            }
+            if (rejected == null) {
+                rejected = new boolean[count];
+            }
+            rejected[chosen] = true;
+        }
+        return PriorityStrategy.selectInOrder(routes, admission, rejected);
+    }
+}
@@ -0,0 +1,100 @@
+package net.rms.xrain.velocityass.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CompiledBandwidthScheduleTest {
+
+    private static final long DEFAULT_LIMIT = 1_000_000;
+
+    @Test
+    void withoutSlotsEveryMinuteUsesDefault() {
+        CompiledBandwidthSchedule schedule = CompiledBandwidthSchedule.compile(DEFAULT_LIMIT, List.of());
+
+        for (int minute = 0; minute < CompiledBandwidthSchedule.MINUTES_PER_DAY; minute++) {
+            assertEquals(DEFAULT_LIMIT, schedule.getLimit(minute));
+            assertNull(schedule.getSlot(minute));
+        }
+        assertEquals(CompiledBandwidthSchedule.MINUTES_PER_DAY, schedule.minutesUntilTransition(0));
+    }
+
+    @Test
+    void sameDaySlotCoversStartToEndMinute() {
+        BandwidthTimeSlot day = new BandwidthTimeSlot("08:00", "18:00", 500_000);
+        CompiledBandwidthSchedule schedule = CompiledBandwidthSchedule.compile(DEFAULT_LIMIT, List.of(day));
+
+        assertEquals(DEFAULT_LIMIT, schedule.getLimit(minute("07:59")));
+        assertSame(day, schedule.getSlot(minute("08:00")));
+        assertEquals(500_000, schedule.getLimit(minute("17:59")));
+        // 与逐次匹配一致：18:00:30 已超过结束时间
+        assertEquals(DEFAULT_LIMIT, schedule.getLimit(minute("18:00")));
+
+        assertEquals(1, schedule.minutesUntilTransition(minute("07:59")));
+        assertEquals(10 * 60, schedule.minutesUntilTransition(minute("08:00")));
+        assertEquals(14 * 60, schedule.minutesUntilTransition(minute("18:00")));
+    }
+
+    @Test
+    void crossMidnightSlotWrapsAroundDay() {
+        BandwidthTimeSlot night = new BandwidthTimeSlot("22:00", "ND06:00", 200_000);
+        CompiledBandwidthSchedule schedule = CompiledBandwidthSchedule.compile(DEFAULT_LIMIT, List.of(night));
+
+        assertEquals(DEFAULT_LIMIT, schedule.getLimit(minute("21:59")));
+        assertEquals(200_000, schedule.getLimit(minute("22:00")));
+        assertEquals(200_000, schedule.getLimit(minute("23:59")));
+        assertEquals(200_000, schedule.getLimit(minute("00:00")));
+        assertEquals(200_000, schedule.getLimit(minute("05:59")));
+        assertEquals(DEFAULT_LIMIT, schedule.getLimit(minute("06:00")));
+
+        // 下一次切换跨过午夜
+        assertEquals(8 * 60, schedule.minutesUntilTransition(minute("22:00")));
+        assertEquals(6 * 60 + 1, schedule.minutesUntilTransition(minute("23:59")));
+        assertEquals(16 * 60, schedule.minutesUntilTransition(minute("06:00")));
+    }
+
+    @Test
+    void earlierSlotWinsOnOverlap() {
+        BandwidthTimeSlot peak = new BandwidthTimeSlot("19:00", "21:00", 100_000, 0);
+        BandwidthTimeSlot evening = new BandwidthTimeSlot("18:00", "23:00", 300_000, 1);
+        CompiledBandwidthSchedule schedule = CompiledBandwidthSchedule.compile(DEFAULT_LIMIT, List.of(peak, evening));
+
+        assertSame(evening, schedule.getSlot(minute("18:30")));
+        assertSame(peak, schedule.getSlot(minute("20:00")));
+        assertSame(evening, schedule.getSlot(minute("21:30")));
+        assertEquals(30, schedule.minutesUntilTransition(minute("18:30")));
+    }
+
+    @Test
+    void invalidSlotNeverMatches() {
+        BandwidthTimeSlot broken = new BandwidthTimeSlot("25:00", "26:00", 1);
+        CompiledBandwidthSchedule schedule = CompiledBandwidthSchedule.compile(DEFAULT_LIMIT, List.of(broken));
+
+        assertEquals(DEFAULT_LIMIT, schedule.getLimit(minute("12:00")));
+        assertNull(schedule.getSlot(minute("12:00")));
+    }
+
+    @Test
+    void scheduleRecompilesWhenSlotsChange() {
+        TimeBasedBandwidthSchedule schedule = new TimeBasedBandwidthSchedule(DEFAULT_LIMIT);
+        assertEquals(DEFAULT_LIMIT, schedule.getCurrentBandwidthLimit(LocalTime.of(20, 0)));
+
+        schedule.addTimeSlot(new BandwidthTimeSlot("18:00", "23:00", 300_000, 1));
+        schedule.addTimeSlot(new BandwidthTimeSlot("19:00", "21:00", 100_000, 0));
+        // 按优先级排序后高优先级 (数值小) 的时间段先匹配
+        assertEquals(100_000, schedule.getCurrentBandwidthLimit(LocalTime.of(20, 0)));
+        assertEquals(300_000, schedule.getCurrentBandwidthLimit(LocalTime.of(22, 0)));
+
+        schedule.clearTimeSlots();
+        assertEquals(DEFAULT_LIMIT, schedule.getCurrentBandwidthLimit(LocalTime.of(20, 0)));
+    }
+
+    private static int minute(String time) {
+        return CompiledBandwidthSchedule.minuteOfDay(LocalTime.parse(time));
+    }
+}
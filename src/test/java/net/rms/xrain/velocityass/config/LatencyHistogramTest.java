@@ -0,0 +1,98 @@
+package net.rms.xrain.velocityass.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    // 每个 2 的幂区间分为 32 个子桶，代表值与真实值的相对误差不超过约 3%
+    private static final double RELATIVE_ERROR = 1.0 / 32;
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(32, histogram.getCount());
+        assertEquals(15, histogram.getPercentileNanos(0.5));
+        assertEquals(31, histogram.getPercentileNanos(1.0));
+    }
+
+    @Test
+    void percentilesOfUniformDistributionAreWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertWithinBucketError(TimeUnit.MILLISECONDS.toNanos(500), histogram.getPercentileNanos(0.50));
+        assertWithinBucketError(TimeUnit.MILLISECONDS.toNanos(990), histogram.getPercentileNanos(0.99));
+        assertWithinBucketError(TimeUnit.MILLISECONDS.toNanos(1), histogram.getPercentileNanos(0.0));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getMaxNanos());
+        assertEquals(1000.0, histogram.getMaxMillis(), 1e-9);
+    }
+
+    @Test
+    void percentileNeverExceedsRecordedMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_001);
+
+        assertEquals(1_000_001, histogram.getPercentileNanos(0.5));
+        assertEquals(1_000_001, histogram.getPercentileNanos(1.0));
+    }
+
+    @Test
+    void skewedDistributionSeparatesMedianAndTail() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(800));
+        }
+
+        assertWithinBucketError(TimeUnit.MILLISECONDS.toNanos(2), histogram.getPercentileNanos(0.50));
+        assertWithinBucketError(TimeUnit.MILLISECONDS.toNanos(2), histogram.getPercentileNanos(0.99));
+        assertWithinBucketError(TimeUnit.MILLISECONDS.toNanos(800), histogram.getPercentileNanos(0.999));
+    }
+
+    @Test
+    void negativeValuesAreIgnoredAndHugeValuesClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getCount());
+
+        long huge = TimeUnit.HOURS.toNanos(10);
+        histogram.record(huge);
+        assertEquals(1, histogram.getCount());
+        assertEquals(huge, histogram.getMaxNanos());
+        assertTrue(histogram.getPercentileNanos(1.0) <= huge);
+    }
+
+    @Test
+    void bucketValueLiesInsideItsBucket() {
+        for (long value = 1; value < TimeUnit.SECONDS.toNanos(60); value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertEquals(index, LatencyHistogram.bucketIndex(LatencyHistogram.bucketValue(index)), "value " + value);
+        }
+    }
+
+    private static void assertWithinBucketError(long expected, long actual) {
+        assertEquals(expected, actual, expected * RELATIVE_ERROR, "percentile");
+    }
+}
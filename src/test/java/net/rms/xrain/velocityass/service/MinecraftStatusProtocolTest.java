@@ -0,0 +1,127 @@
+package net.rms.xrain.velocityass.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MinecraftStatusProtocolTest {
+
+    @Test
+    void varIntRoundTrip() {
+        int[] values = {0, 1, 127, 128, 255, 25565, 2097151, 2097152, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (int value : values) {
+            ByteBuffer buffer = ByteBuffer.allocate(5);
+            MinecraftStatusProtocol.writeVarInt(buffer, value);
+            assertEquals(MinecraftStatusProtocol.varIntSize(value), buffer.position(), "size of " + value);
+            buffer.flip();
+            assertEquals(value, MinecraftStatusProtocol.readVarInt(buffer));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    void varIntUsesMinecraftEncoding() {
+        ByteBuffer buffer = ByteBuffer.allocate(5);
+        MinecraftStatusProtocol.writeVarInt(buffer, 300);
+        assertArrayEquals(new byte[]{(byte) 0xAC, 0x02}, Arrays.copyOf(buffer.array(), buffer.position()));
+
+        buffer.clear();
+        MinecraftStatusProtocol.writeVarInt(buffer, -1);
+        assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}, buffer.array());
+    }
+
+    @Test
+    void readVarIntRejectsTooLongValue() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+        assertThrows(IllegalArgumentException.class, () -> MinecraftStatusProtocol.readVarInt(buffer));
+    }
+
+    @Test
+    void readPacketLengthWaitsForCompletePacket() {
+        ByteBuffer ping = MinecraftStatusProtocol.encodePing(42L);
+        byte[] bytes = new byte[ping.remaining()];
+        ping.get(bytes);
+
+        // 长度前缀之后的数据不足
+        ByteBuffer partial = ByteBuffer.wrap(bytes, 0, bytes.length - 1).slice();
+        assertEquals(-1, MinecraftStatusProtocol.readPacketLength(partial));
+        assertEquals(0, partial.position());
+
+        // 长度前缀本身不完整
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        assertEquals(-1, MinecraftStatusProtocol.readPacketLength(empty));
+
+        ByteBuffer complete = ByteBuffer.wrap(bytes);
+        int length = MinecraftStatusProtocol.readPacketLength(complete);
+        assertEquals(1 + Long.BYTES, length);
+        assertEquals(MinecraftStatusProtocol.PING_PACKET_ID, MinecraftStatusProtocol.readVarInt(complete));
+        assertEquals(42L, complete.getLong());
+        assertFalse(complete.hasRemaining());
+    }
+
+    @Test
+    void statusRequestContainsHandshakeAndRequest() {
+        ByteBuffer buffer = MinecraftStatusProtocol.encodeStatusRequest("mc.example.com", 25565);
+
+        int handshakeLength = MinecraftStatusProtocol.readPacketLength(buffer);
+        int handshakeEnd = buffer.position() + handshakeLength;
+        assertEquals(MinecraftStatusProtocol.HANDSHAKE_PACKET_ID, MinecraftStatusProtocol.readVarInt(buffer));
+        assertEquals(MinecraftStatusProtocol.UNKNOWN_PROTOCOL_VERSION, MinecraftStatusProtocol.readVarInt(buffer));
+        assertEquals("mc.example.com", MinecraftStatusProtocol.readString(buffer));
+        assertEquals(25565, buffer.getShort() & 0xFFFF);
+        assertEquals(MinecraftStatusProtocol.STATUS_NEXT_STATE, MinecraftStatusProtocol.readVarInt(buffer));
+        assertEquals(handshakeEnd, buffer.position());
+
+        assertEquals(1, MinecraftStatusProtocol.readPacketLength(buffer));
+        assertEquals(MinecraftStatusProtocol.STATUS_PACKET_ID, MinecraftStatusProtocol.readVarInt(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void readStringRejectsLengthBeyondBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        MinecraftStatusProtocol.writeVarInt(buffer, 20);
+        buffer.put("abc".getBytes(StandardCharsets.UTF_8));
+        buffer.flip();
+        assertThrows(IllegalArgumentException.class, () -> MinecraftStatusProtocol.readString(buffer));
+    }
+
+    @Test
+    void parsePlayerCountsFromVanillaResponse() {
+        String json = "{\"version\":{\"name\":\"1.20.4\",\"protocol\":765},"
+                + "\"players\":{\"max\":100,\"online\":5,\"sample\":[{\"name\":\"Steve\",\"id\":\"0\"}]},"
+                + "\"description\":{\"text\":\"hello\"}}";
+        assertArrayEquals(new int[]{5, 100}, MinecraftStatusProtocol.parsePlayerCounts(json));
+    }
+
+    @Test
+    void parsePlayerCountsToleratesWhitespaceAndFieldOrder() {
+        String json = "{ \"players\" : { \"online\" : 12 , \"max\" : 200 } }";
+        assertArrayEquals(new int[]{12, 200}, MinecraftStatusProtocol.parsePlayerCounts(json));
+    }
+
+    @Test
+    void parsePlayerCountsSkipsSampleBeforeCounts() {
+        // 键的顺序不固定：sample 在前，并且有名为 online 的玩家
+        String json = "{\"description\":{\"text\":\"players: {\\\"online\\\": 1}\"},"
+                + "\"players\":{\"sample\":[{\"name\":\"online\",\"id\":\"0\"},{\"name\":\"x\",\"max\":7}],"
+                + "\"max\":100,\"online\":5}}";
+        assertArrayEquals(new int[]{5, 100}, MinecraftStatusProtocol.parsePlayerCounts(json));
+    }
+
+    @Test
+    void parsePlayerCountsReturnsUnknownWhenMissing() {
+        assertArrayEquals(new int[]{-1, -1}, MinecraftStatusProtocol.parsePlayerCounts("{\"description\":\"x\"}"));
+        assertArrayEquals(new int[]{-1, 20}, MinecraftStatusProtocol.parsePlayerCounts("{\"players\":{\"max\":20}}"));
+        // 其他对象中的同名字段不应被当作玩家数
+        assertArrayEquals(new int[]{-1, -1},
+                MinecraftStatusProtocol.parsePlayerCounts("{\"players\":{},\"extra\":{\"online\":3,\"max\":4}}"));
+    }
+}
@@ -0,0 +1,161 @@
+package net.rms.xrain.velocityass.service;
+
+import net.rms.xrain.velocityass.config.ProbeMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProbeEngineTest {
+
+    private static final String STATUS_JSON = "{\"version\":{\"name\":\"test\",\"protocol\":765},"
+            + "\"players\":{\"max\":50,\"online\":7},\"description\":{\"text\":\"test\"}}";
+
+    private ProbeEngine engine;
+    private ServerSocket serverSocket;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        engine = new ProbeEngine(NOPLogger.NOP_LOGGER);
+        engine.start();
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        engine.shutdown();
+        serverSocket.close();
+    }
+
+    private InetSocketAddress serverAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+    }
+
+    @Test
+    void tcpProbeSucceedsAgainstListeningSocket() throws Exception {
+        PingService.PingResult result = engine.probe(serverAddress(), 2000).get(5, TimeUnit.SECONDS);
+
+        assertTrue(result.available);
+        assertTrue(result.rttNanos > 0);
+        assertTrue(result.ping >= 1);
+        assertFalse(result.hasPlayerCounts());
+    }
+
+    @Test
+    void statusProbeReadsPlayerCountsAndPong() throws Exception {
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(this::respondToStatusPing);
+
+        PingService.PingResult result = engine.probe(serverAddress(), 2000, ProbeMode.STATUS).get(5, TimeUnit.SECONDS);
+        responder.get(5, TimeUnit.SECONDS);
+
+        assertTrue(result.available);
+        assertEquals(7, result.onlinePlayers);
+        assertEquals(50, result.maxPlayers);
+    }
+
+    @Test
+    void statusProbeFailsWhenServerDoesNotAnswer() throws Exception {
+        // 只接受连接不回复，探测应在超时后失败
+        PingService.PingResult result = engine.probe(serverAddress(), 200, ProbeMode.STATUS).get(5, TimeUnit.SECONDS);
+
+        assertFalse(result.available);
+    }
+
+    @Test
+    void probeFailsWhenConnectionRefused() throws Exception {
+        InetSocketAddress address = serverAddress();
+        serverSocket.close();
+
+        PingService.PingResult result = engine.probe(address, 2000).get(5, TimeUnit.SECONDS);
+
+        assertFalse(result.available);
+    }
+
+    @Test
+    void unresolvedAddressFailsImmediately() throws Exception {
+        PingService.PingResult result = engine.probe(InetSocketAddress.createUnresolved("unresolved.invalid", 25565), 2000)
+                .get(1, TimeUnit.SECONDS);
+
+        assertFalse(result.available);
+    }
+
+    @Test
+    void probesAfterShutdownCompleteExceptionally() {
+        engine.shutdown();
+
+        CompletableFuture<PingService.PingResult> future = engine.probe(serverAddress(), 2000);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    /**
+     * 简化的服务端：读取握手和状态请求，返回状态 JSON，再原样回复 ping 负载
+     */
+    private void respondToStatusPing() {
+        try (Socket socket = serverSocket.accept()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            skipPacket(in); // 握手
+            skipPacket(in); // 状态请求
+
+            byte[] json = STATUS_JSON.getBytes(StandardCharsets.UTF_8);
+            int bodyLength = 1 + MinecraftStatusProtocol.varIntSize(json.length) + json.length;
+            ByteBuffer status = ByteBuffer.allocate(MinecraftStatusProtocol.varIntSize(bodyLength) + bodyLength);
+            MinecraftStatusProtocol.writeVarInt(status, bodyLength);
+            MinecraftStatusProtocol.writeVarInt(status, MinecraftStatusProtocol.STATUS_PACKET_ID);
+            MinecraftStatusProtocol.writeVarInt(status, json.length);
+            status.put(json);
+            out.write(status.array());
+            out.flush();
+
+            assertEquals(1 + Long.BYTES, readVarInt(in));
+            assertEquals(MinecraftStatusProtocol.PING_PACKET_ID, readVarInt(in));
+            ByteBuffer pong = MinecraftStatusProtocol.encodePing(in.readLong());
+            out.write(pong.array(), 0, pong.limit());
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void skipPacket(DataInputStream in) throws IOException {
+        in.readFully(new byte[readVarInt(in)]);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("连接已关闭");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt 过长");
+    }
+}
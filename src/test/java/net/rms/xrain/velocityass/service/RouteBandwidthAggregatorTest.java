@@ -0,0 +1,174 @@
+package net.rms.xrain.velocityass.service;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.player.PlayerBandwidthStats;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.ServerConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.rms.xrain.velocityass.testing.Stubs.stub;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteBandwidthAggregatorTest {
+
+    private static final double DELTA = 1e-6;
+    private static final double RESERVATION = 64 * 1024;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final Set<UUID> onlinePlayers = new HashSet<>();
+    private RouteBandwidthAggregator aggregator;
+    private RouteInfo routeA;
+    private RouteInfo routeB;
+    private ServerConfig serverConfig;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new RouteBandwidthAggregator(proxyServer(), NOPLogger.NOP_LOGGER, clock::get);
+        routeA = new RouteInfo("a.example.com:25565", 1, true);
+        routeB = new RouteInfo("b.example.com:25565", 2, true);
+        serverConfig = new ServerConfig("lobby");
+        serverConfig.getRoutes().add(routeA);
+        serverConfig.getRoutes().add(routeB);
+    }
+
+    @Test
+    void assignKeepsReservationUntilBandwidthIsMeasured() {
+        UUID player = join(routeA);
+
+        assertEquals(RESERVATION, routeA.getReservedBandwidth(), DELTA);
+        assertEquals(1, routeA.getConnectedPlayerCount());
+        assertSame(routeA, aggregator.getPlayerRoute(player));
+        assertEquals("lobby", aggregator.getPlayerServer(player));
+    }
+
+    @Test
+    void measuredBandwidthOffsetsReservation() {
+        UUID player = join(routeA);
+
+        aggregator.updatePlayerBandwidth(player, 20_000);
+        assertEquals(20_000, routeA.getCurrentBandwidthUsage(), DELTA);
+        assertEquals(RESERVATION - 20_000, routeA.getReservedBandwidth(), DELTA);
+
+        aggregator.updatePlayerBandwidth(player, RESERVATION + 1_000);
+        assertEquals(RESERVATION + 1_000, routeA.getCurrentBandwidthUsage(), DELTA);
+        assertEquals(0.0, routeA.getReservedBandwidth(), DELTA);
+    }
+
+    @Test
+    void reservationIsReleasedAfterTtl() {
+        UUID player = join(routeA);
+
+        clock.addAndGet(RouteBandwidthAggregator.RESERVATION_TTL_MILLIS - 1);
+        aggregator.updatePlayerBandwidth(player, 0.0);
+        assertEquals(RESERVATION, routeA.getReservedBandwidth(), DELTA);
+
+        clock.addAndGet(2);
+        aggregator.updatePlayerBandwidth(player, 0.0);
+        assertEquals(0.0, routeA.getReservedBandwidth(), DELTA);
+    }
+
+    @Test
+    void refreshReleasesExpiredReservationWithoutBandwidthData() {
+        join(routeA);
+
+        clock.addAndGet(RouteBandwidthAggregator.RESERVATION_TTL_MILLIS + 1);
+        aggregator.refresh(BandwidthTable.empty(), List.of(serverConfig));
+
+        assertEquals(0.0, routeA.getReservedBandwidth(), DELTA);
+        assertEquals(1, routeA.getConnectedPlayerCount());
+    }
+
+    @Test
+    void reassignMovesBandwidthAndReservation() {
+        UUID player = join(routeA);
+        aggregator.updatePlayerBandwidth(player, 10_000);
+
+        // 与选路一致：先在新路由上预留，再交给聚合器
+        assertTrue(routeB.tryReserveBandwidth(RESERVATION, 0));
+        aggregator.assignPlayer(player, "lobby", routeB, RESERVATION);
+
+        assertEquals(0, routeA.getConnectedPlayerCount());
+        assertEquals(0.0, routeA.getCurrentBandwidthUsage(), DELTA);
+        assertEquals(0.0, routeA.getReservedBandwidth(), DELTA);
+        assertEquals(1, routeB.getConnectedPlayerCount());
+        assertEquals(10_000, routeB.getCurrentBandwidthUsage(), DELTA);
+        // 已有的 10000 实测带宽直接抵扣预留
+        assertEquals(RESERVATION - 10_000, routeB.getReservedBandwidth(), DELTA);
+    }
+
+    @Test
+    void removePlayerClearsRouteCounters() {
+        UUID player = join(routeA);
+        aggregator.updatePlayerBandwidth(player, 5_000);
+
+        assertSame(routeA, aggregator.removePlayer(player));
+
+        assertEquals(0, routeA.getConnectedPlayerCount());
+        assertEquals(0.0, routeA.getCurrentBandwidthUsage(), DELTA);
+        assertEquals(0.0, routeA.getReservedBandwidth(), DELTA);
+        assertNull(aggregator.getPlayerRoute(player));
+        assertNull(aggregator.removePlayer(player));
+    }
+
+    @Test
+    void refreshRecomputesTotalsAndDropsOfflinePlayers() {
+        UUID online = join(routeA);
+        UUID offline = join(routeB);
+        onlinePlayers.remove(offline);
+
+        aggregator.refresh(table(online, 10_000), List.of(serverConfig));
+
+        assertEquals(10_000, routeA.getCurrentBandwidthUsage(), DELTA);
+        assertEquals(RESERVATION - 10_000, routeA.getReservedBandwidth(), DELTA);
+        assertEquals(0, routeB.getConnectedPlayerCount());
+        assertEquals(0.0, routeB.getReservedBandwidth(), DELTA);
+        assertNull(aggregator.getPlayerRoute(offline));
+        assertEquals(1, aggregator.getTrackedPlayerCount());
+        assertEquals(RESERVATION + 0.3 * (10_000 - RESERVATION), aggregator.getEstimatedPlayerBandwidth(), DELTA);
+    }
+
+    private UUID join(RouteInfo route) {
+        UUID player = UUID.randomUUID();
+        onlinePlayers.add(player);
+        assertTrue(route.tryReserveBandwidth(RESERVATION, 0));
+        aggregator.assignPlayer(player, "lobby", route, RESERVATION);
+        return player;
+    }
+
+    /**
+     * 只包含一个玩家的带宽表，带宽全部计为下载
+     */
+    private BandwidthTable table(UUID playerId, double bandwidth) {
+        PlayerBandwidthStats stats = stub(PlayerBandwidthStats.class, (method, args) -> switch (method.getName()) {
+            case "getPlayerUuid" -> playerId;
+            case "getDownloadSpeed" -> bandwidth;
+            case "getUploadSpeed" -> 0.0;
+            case "getTotalBytesSent", "getTotalBytesReceived" -> 0L;
+            default -> null;
+        });
+        return BandwidthTable.of(List.of(stats), clock.get());
+    }
+
+    private ProxyServer proxyServer() {
+        Player player = stub(Player.class);
+        return stub(ProxyServer.class, (method, args) -> {
+            if (method.getName().equals("getPlayer") && args[0] instanceof UUID) {
+                return onlinePlayers.contains(args[0]) ? Optional.of(player) : Optional.empty();
+            }
+            return null;
+        });
+    }
+}
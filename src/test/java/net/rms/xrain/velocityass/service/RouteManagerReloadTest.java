@@ -0,0 +1,163 @@
+package net.rms.xrain.velocityass.service;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import net.rms.xrain.velocityass.config.ConfigDiff;
+import net.rms.xrain.velocityass.config.ConfigManager;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.RouteSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static net.rms.xrain.velocityass.testing.Stubs.stub;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteManagerReloadTest {
+
+    private static final String ROUTE_A = "a.example.com:25565";
+    private static final String ROUTE_B = "b.example.com:25565";
+    private static final String ROUTE_C = "c.example.com:25565";
+
+    @TempDir
+    Path dataDirectory;
+
+    private ConfigManager configManager;
+    private RouteManager routeManager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        writeConfig(route(ROUTE_A, 1, -1) + route(ROUTE_B, 2, 1_048_576), 30);
+        configManager = new ConfigManager(dataDirectory, NOPLogger.NOP_LOGGER, null);
+        configManager.loadConfig();
+        // 所有玩家都在线，避免定时带宽汇总把测试中分配的玩家当作已离线清理
+        Player player = stub(Player.class);
+        ProxyServer proxyServer = stub(ProxyServer.class,
+                (method, args) -> method.getName().equals("getPlayer") ? Optional.of(player) : null);
+        routeManager = new RouteManager(configManager, proxyServer, NOPLogger.NOP_LOGGER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        routeManager.shutdown();
+    }
+
+    @Test
+    void reloadKeepsUnchangedRoutesAndAppliesChangedSettings() throws IOException {
+        RouteInfo routeA = routeManager.findRoute("lobby", ROUTE_A);
+        RouteInfo routeB = routeManager.findRoute("lobby", ROUTE_B);
+        for (int i = 1; i <= 10; i++) {
+            routeA.getLatencyStats().record(i * 1_000_000L);
+        }
+        UUID player = UUID.randomUUID();
+        routeManager.getBandwidthAggregator().assignPlayer(player, "lobby", routeA);
+        RouteSettings settingsA = routeA.getSettings();
+        long version = configManager.getSnapshot().getVersion();
+
+        writeConfig(route(ROUTE_A, 1, -1) + route(ROUTE_B, 2, 2_097_152) + route(ROUTE_C, 3, -1), 60);
+        ConfigDiff diff = routeManager.reloadConfig();
+
+        assertEquals(List.of("lobby -> " + ROUTE_C), diff.getAddedRoutes());
+        assertEquals(List.of("lobby -> " + ROUTE_B), diff.getChangedRoutes());
+        assertTrue(diff.getRemovedRoutes().isEmpty());
+        assertEquals(List.of("lobby"), diff.getChangedServers());
+        assertEquals(version + 1, configManager.getSnapshot().getVersion());
+
+        // 未变化的路由沿用原对象和全部运行时状态
+        assertSame(routeA, routeManager.findRoute("lobby", ROUTE_A));
+        assertSame(settingsA, routeA.getSettings());
+        assertEquals(10, routeA.getLatencyStats().getSampleCount());
+        assertEquals(1, routeA.getConnectedPlayerCount());
+        assertSame(routeA, routeManager.getPlayerRoute(player));
+
+        // 修改过的路由同样沿用原对象，新的带宽限制立即生效
+        assertSame(routeB, routeManager.findRoute("lobby", ROUTE_B));
+        assertEquals(2_097_152, routeB.getMaxBandwidth());
+        assertEquals(2_097_152, routeB.getCurrentBandwidthLimit());
+        assertEquals(60, configManager.getServerConfig("lobby").getPingInterval());
+    }
+
+    @Test
+    void reloadDropsPlayersOfRemovedRoute() throws IOException {
+        RouteInfo routeB = routeManager.findRoute("lobby", ROUTE_B);
+        UUID player = UUID.randomUUID();
+        routeManager.getBandwidthAggregator().assignPlayer(player, "lobby", routeB);
+
+        writeConfig(route(ROUTE_A, 1, -1), 30);
+        ConfigDiff diff = routeManager.reloadConfig();
+
+        assertEquals(List.of("lobby -> " + ROUTE_B), diff.getRemovedRoutes());
+        assertNull(routeManager.findRoute("lobby", ROUTE_B));
+        assertNull(routeManager.getPlayerRoute(player));
+        assertEquals(0, routeB.getConnectedPlayerCount());
+    }
+
+    @Test
+    void yamlSyntaxErrorKeepsCurrentConfig() throws IOException {
+        RouteInfo routeB = routeManager.findRoute("lobby", ROUTE_B);
+        RouteSettings settingsB = routeB.getSettings();
+        long version = configManager.getSnapshot().getVersion();
+
+        Files.write(dataDirectory.resolve("config.yml"), "auto-reload: false\nservers: [\n".getBytes());
+
+        assertThrows(IOException.class, () -> routeManager.reloadConfig());
+        assertEquals(version, configManager.getSnapshot().getVersion());
+        assertSame(settingsB, routeB.getSettings());
+        assertSame(routeB, routeManager.findRoute("lobby", ROUTE_B));
+        assertTrue(configManager.isAutoReload());
+    }
+
+    @Test
+    void invalidRouteKeepsCurrentConfig() throws IOException {
+        RouteInfo routeB = routeManager.findRoute("lobby", ROUTE_B);
+        RouteSettings settingsB = routeB.getSettings();
+        long version = configManager.getSnapshot().getVersion();
+
+        // 前面的路由和全局设置都能解析，最后一条路由的 priority 类型错误
+        writeConfig("auto-reload: false\nmetrics:\n  enabled: true\n",
+                route(ROUTE_A, 1, -1) + route(ROUTE_B, 2, 2_097_152)
+                        + "      - address: \"" + ROUTE_C + "\"\n        priority: \"high\"\n        enabled: true\n", 30);
+
+        assertThrows(IOException.class, () -> routeManager.reloadConfig());
+        assertEquals(version, configManager.getSnapshot().getVersion());
+        assertSame(settingsB, routeB.getSettings());
+        assertEquals(1_048_576, routeB.getMaxBandwidth());
+        assertTrue(configManager.isAutoReload());
+        assertFalse(configManager.isMetricsEnabled());
+    }
+
+    private void writeConfig(String routes, int pingInterval) throws IOException {
+        writeConfig("", routes, pingInterval);
+    }
+
+    private void writeConfig(String header, String routes, int pingInterval) throws IOException {
+        String config = header
+                + "servers:\n"
+                + "  lobby:\n"
+                + "    routes:\n"
+                + routes
+                + "    ping-interval: " + pingInterval + "\n";
+        Files.write(dataDirectory.resolve("config.yml"), config.getBytes());
+    }
+
+    private static String route(String address, int priority, long maxBandwidth) {
+        return "      - address: \"" + address + "\"\n"
+                + "        priority: " + priority + "\n"
+                + "        enabled: true\n"
+                + "        max-bandwidth: " + maxBandwidth + "\n";
+    }
+}
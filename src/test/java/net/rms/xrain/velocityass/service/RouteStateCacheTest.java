@@ -0,0 +1,165 @@
+package net.rms.xrain.velocityass.service;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import net.rms.xrain.velocityass.config.ConfigManager;
+import net.rms.xrain.velocityass.config.RouteHistory;
+import net.rms.xrain.velocityass.config.RouteInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.rms.xrain.velocityass.testing.Stubs.stub;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteStateCacheTest {
+
+    private static final String CONFIG = "servers:\n"
+            + "  lobby:\n"
+            + "    routes:\n"
+            + "      - address: \"a.example.com:25565\"\n"
+            + "        priority: 1\n"
+            + "        enabled: true\n"
+            + "      - address: \"b.example.com:25565\"\n"
+            + "        priority: 2\n"
+            + "        enabled: true\n";
+    private static final String ADDRESS = "a.example.com:25565";
+    // 36 字节的文件头之后
+    private static final long PAYLOAD_OFFSET = 40;
+
+    @TempDir
+    Path dataDirectory;
+
+    private final List<RouteManager> routeManagers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(dataDirectory.resolve("config.yml"), CONFIG.getBytes());
+    }
+
+    @AfterEach
+    void tearDown() {
+        routeManagers.forEach(RouteManager::shutdown);
+    }
+
+    @Test
+    void saveAndLoadRestoresRouteState() throws IOException {
+        RouteManager routeManager = newRouteManager();
+        RouteInfo saved = routeManager.findRoute("lobby", ADDRESS);
+        for (int i = 1; i <= 40; i++) {
+            saved.getLatencyStats().record(i * 1_000_000L);
+        }
+        saved.updateStatus(true, 33);
+        saved.setAvailable(false);
+        saved.setPlayerCounts(7, 100);
+        recordProfile(saved);
+        float[] profile = new float[RouteHistory.PROFILE_LENGTH];
+        saved.getHistory().copyProfile(profile);
+
+        save(routeManager);
+
+        RouteInfo restored = load(newRouteManager()).findRoute("lobby", ADDRESS);
+        assertFalse(restored.isAvailable());
+        assertEquals(33, restored.getLastPing());
+        assertEquals(7, restored.getOnlinePlayers());
+        assertEquals(100, restored.getMaxPlayers());
+        assertEquals(saved.getLatencyStats().getSampleCount(), restored.getLatencyStats().getSampleCount());
+        assertEquals(saved.getLatencyStats().getEwmaMillis(), restored.getLatencyStats().getEwmaMillis(), 1e-9);
+        assertEquals(saved.getLatencyStats().getJitterMillis(), restored.getLatencyStats().getJitterMillis(), 1e-9);
+
+        float[] restoredProfile = new float[RouteHistory.PROFILE_LENGTH];
+        restored.getHistory().copyProfile(restoredProfile);
+        assertArrayEquals(profile, restoredProfile);
+    }
+
+    @Test
+    void corruptFileIsIgnored() throws IOException {
+        RouteManager routeManager = newRouteManager();
+        RouteInfo saved = routeManager.findRoute("lobby", ADDRESS);
+        saved.getLatencyStats().record(20_000_000L);
+        saved.updateStatus(true, 20);
+        saved.setAvailable(false);
+        recordProfile(saved);
+
+        save(routeManager);
+        flipPayloadByte(dataDirectory.resolve(RouteStateCache.FILE_NAME));
+
+        // CRC 不匹配时整份文件作废，路由保持冷启动状态
+        RouteInfo restored = load(newRouteManager()).findRoute("lobby", ADDRESS);
+        assertTrue(restored.isAvailable());
+        assertEquals(-1, restored.getLastPing());
+        assertFalse(restored.getLatencyStats().hasSamples());
+        float[] restoredProfile = new float[RouteHistory.PROFILE_LENGTH];
+        restored.getHistory().copyProfile(restoredProfile);
+        assertTrue(allNaN(restoredProfile));
+    }
+
+    private RouteManager newRouteManager() throws IOException {
+        ConfigManager configManager = new ConfigManager(dataDirectory, NOPLogger.NOP_LOGGER, null);
+        configManager.loadConfig();
+        RouteManager routeManager = new RouteManager(configManager, stub(ProxyServer.class), NOPLogger.NOP_LOGGER);
+        routeManagers.add(routeManager);
+        return routeManager;
+    }
+
+    private void save(RouteManager routeManager) {
+        RouteStateCache cache = new RouteStateCache(dataDirectory, routeManager, NOPLogger.NOP_LOGGER);
+        cache.save();
+        cache.close();
+    }
+
+    private RouteManager load(RouteManager routeManager) {
+        RouteStateCache cache = new RouteStateCache(dataDirectory, routeManager, NOPLogger.NOP_LOGGER);
+        cache.load();
+        cache.close();
+        return routeManager;
+    }
+
+    /**
+     * 记录五分钟的带宽历史。时间取在未来，避免 RouteManager 的定时记录先占用当前分钟
+     */
+    private static void recordProfile(RouteInfo route) {
+        long start = System.currentTimeMillis() + 60_000;
+        for (long time = start; time < start + 300_000; time += 5_000) {
+            route.getHistory().record(time, 1234f, 0f, 3, 20f);
+        }
+        float[] profile = new float[RouteHistory.PROFILE_LENGTH];
+        route.getHistory().copyProfile(profile);
+        assertFalse(allNaN(profile));
+    }
+
+    /**
+     * 改动头部之后的第一条记录中的一个字节，文件长度和格式不变
+     */
+    private static void flipPayloadByte(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, PAYLOAD_OFFSET);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0x5A));
+            buffer.clear();
+            channel.write(buffer, PAYLOAD_OFFSET);
+        }
+    }
+
+    private static boolean allNaN(float[] values) {
+        for (float value : values) {
+            if (!Float.isNaN(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
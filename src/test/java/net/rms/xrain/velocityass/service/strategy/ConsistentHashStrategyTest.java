@@ -0,0 +1,126 @@
+package net.rms.xrain.velocityass.service.strategy;
+
+import net.rms.xrain.velocityass.config.RouteInfo;
+import net.rms.xrain.velocityass.config.RouteSettings;
+import net.rms.xrain.velocityass.config.ServerConfig;
+import net.rms.xrain.velocityass.service.RoutingTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ConsistentHashStrategyTest {
+
+    private static final int PLAYERS = 20_000;
+    private static final RouteAdmission ADMIT_ALL = route -> true;
+
+    private final ConsistentHashStrategy strategy = ConsistentHashStrategy.INSTANCE;
+
+    @Test
+    void samePlayerAlwaysLandsOnSameRoute() {
+        RoutingTable.ServerRoutes routes = routes(new int[]{1, 1, 1, 1});
+        // 重新构建的路由对象只要地址相同，结果也相同 (配置重载后的情况)
+        RoutingTable.ServerRoutes rebuilt = routes(new int[]{1, 1, 1, 1});
+        UUID[] players = players(1_000);
+
+        for (UUID player : players) {
+            String address = select(routes, player);
+            assertEquals(address, select(routes, player));
+            assertEquals(address, select(rebuilt, player));
+        }
+    }
+
+    @Test
+    void removingRouteMovesOnlyItsPlayers() {
+        RoutingTable.ServerRoutes before = routes(new int[]{1, 1, 1, 1, 1});
+        String removed = before.getCandidate(2).getAddress();
+        RoutingTable.ServerRoutes after = routes(new int[]{1, 1, 1, 1, 1}, 2);
+
+        int moved = 0;
+        for (UUID player : players(PLAYERS)) {
+            String oldAddress = select(before, player);
+            String newAddress = select(after, player);
+            if (oldAddress.equals(removed)) {
+                assertNotEquals(removed, newAddress);
+                moved++;
+            } else {
+                assertEquals(oldAddress, newAddress);
+            }
+        }
+        // 被移除的路由上约有 1/5 的玩家
+        assertEquals(0.2, (double) moved / PLAYERS, 0.02);
+    }
+
+    @Test
+    void spreadFollowsWeight() {
+        int[] weights = {1, 2, 3, 4};
+        RoutingTable.ServerRoutes routes = routes(weights);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (UUID player : players(PLAYERS)) {
+            counts.merge(select(routes, player), 1, Integer::sum);
+        }
+
+        for (int i = 0; i < weights.length; i++) {
+            double share = counts.getOrDefault(address(i), 0) / (double) PLAYERS;
+            assertEquals(weights[i] / 10.0, share, 0.02, address(i));
+        }
+    }
+
+    @Test
+    void rejectedTopChoiceOverflowsToStableSecondChoice() {
+        RoutingTable.ServerRoutes routes = routes(new int[]{1, 1, 1, 1});
+
+        for (UUID player : players(1_000)) {
+            RouteInfo top = strategy.select(routes, player, ADMIT_ALL);
+            RouteAdmission rejectTop = route -> route != top;
+
+            RouteInfo second = strategy.select(routes, player, rejectTop);
+            assertNotNull(second);
+            assertNotEquals(top.getAddress(), second.getAddress());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(second.getAddress(), strategy.select(routes, player, rejectTop).getAddress());
+            }
+        }
+    }
+
+    private String select(RoutingTable.ServerRoutes routes, UUID player) {
+        return strategy.select(routes, player, ADMIT_ALL).getAddress();
+    }
+
+    /**
+     * 每条路由的权重取自 weights，skip 指定的路由不加入
+     */
+    private static RoutingTable.ServerRoutes routes(int[] weights, int... skip) {
+        ServerConfig serverConfig = new ServerConfig("lobby");
+        outer:
+        for (int i = 0; i < weights.length; i++) {
+            for (int s : skip) {
+                if (s == i) {
+                    continue outer;
+                }
+            }
+            serverConfig.addRoute(new RouteInfo(address(i), new RouteSettings(i + 1, weights[i], true, -1, null, false)));
+        }
+        return RoutingTable.ServerRoutes.of(serverConfig);
+    }
+
+    private static String address(int index) {
+        return "10.0.0." + (index + 1) + ":25565";
+    }
+
+    private static UUID[] players(int count) {
+        Random random = new Random(42);
+        UUID[] players = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            players[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        return players;
+    }
+}
@@ -0,0 +1,92 @@
+package net.rms.xrain.velocityass.testing;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 测试和基准测试共用的 Velocity API 桩，用动态代理实现接口，不依赖 mock 库。
+ * answer 返回 null 的方法使用默认值：基本类型为 0 或 false，Optional 为空，集合为空集合，
+ * 其他接口递归返回同样规则的桩，其余引用类型为 null。equals/hashCode/toString 按对象身份处理
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * 所有方法都返回默认值的桩
+     */
+    public static <T> T stub(Class<T> type) {
+        return stub(type, (method, args) -> null);
+    }
+
+    public static <T> T stub(Class<T> type, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    if (method.getParameterCount() == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "equals":
+                    if (method.getParameterCount() == 1) {
+                        return proxy == args[0];
+                    }
+                    break;
+                case "toString":
+                    if (method.getParameterCount() == 0) {
+                        return type.getSimpleName() + "Stub";
+                    }
+                    break;
+                default:
+                    break;
+            }
+            Object value = answer.answer(method, args);
+            return value != null ? value : defaultValue(method.getReturnType());
+        }));
+    }
+
+    private static Object defaultValue(Class<?> returnType) {
+        if (returnType == boolean.class) {
+            return false;
+        }
+        if (returnType == int.class || returnType == short.class || returnType == byte.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        if (returnType == double.class) {
+            return 0.0;
+        }
+        if (returnType == float.class) {
+            return 0.0f;
+        }
+        if (returnType == Optional.class) {
+            return Optional.empty();
+        }
+        if (returnType.isAssignableFrom(List.class)) {
+            return Collections.emptyList();
+        }
+        if (returnType.isAssignableFrom(Set.class)) {
+            return Collections.emptySet();
+        }
+        if (returnType == Map.class) {
+            return Collections.emptyMap();
+        }
+        if (returnType.isInterface()) {
+            return stub(returnType);
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    public interface Answer {
+        Object answer(Method method, Object[] args);
+    }
+}